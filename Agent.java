@@ -1,9 +1,8 @@
 import java.util.List;
-import java.util.Random;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
+import java.util.PriorityQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
-public class Agent implements Runnable{
+public class Agent {
 
     private String agentId = "";
     private Sensor createLocation = null;
@@ -18,7 +17,21 @@ public class Agent implements Runnable{
     //the number of children created by the current thread
     private int children = 0;
 
-    private BlockingQueue<String> queue = new PriorityBlockingQueue<>();
+    private final Mailbox<Message.Type> queue = new Mailbox<>(new PriorityQueue<>());
+
+    //Agents are actors on the Scheduler, woken by their Mailbox and their walk timer
+    private Scheduler scheduler = null;
+    //whether the AgentPool counts this Agent as live
+    private boolean pooled = false;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean walkDue = false;
+    private boolean walkArmed = false;
+    private boolean done = false;
+    //life of this Agent object, moved on each time it finishes or is reused, so a walk timer of an earlier life
+    //that is still pending is ignored when it goes off
+    private volatile int generation = 0;
+    //shared by the walkers looking for the fire together, null for a single walker
+    private AtomicBoolean search = null;
 
     /**
      * Constructor for the Agent object. Sets agentId, creation
@@ -35,6 +48,40 @@ public class Agent implements Runnable{
         this.fireActive = fire;
     }
 
+    /**
+     * Gets a finished Agent ready to be used again by the AgentPool, as if it was
+     * just created with the constructor
+     * @param id String representing Agent id
+     * @param creation Sensor location for which the Agent
+     * was created
+     * @param fire boolean for whether an initial fire was found
+     */
+    void reset(String id, Sensor creation, boolean fire){
+        this.agentId = id;
+        this.createLocation = creation;
+        this.current = creation;
+        this.previous = null;
+        this.fireActive = fire;
+        this.children = 0;
+        while(queue.poll() != null){
+            //drop what was left for the last use
+        }
+        this.walkDue = false;
+        this.walkArmed = false;
+        this.done = false;
+        this.search = null;
+        this.generation++;
+    }
+
+    /**
+     * Returns the time of the Scheduler for the log
+     * @return long Scheduler time in nanoseconds, -1 before the Agent is started
+     */
+    private long now(){
+        Scheduler current = scheduler;
+        return current == null ? -1 : current.now();
+    }
+
     /**
      * Creates a unique id for a child created by
      * the current Agent thread
@@ -47,107 +94,74 @@ public class Agent implements Runnable{
     }
 
     /**
-     * Returns the blocking queue contained in the
+     * Returns the Mailbox contained in the
      * current Agent thread
-     * @return BlockingQueue of String messages
+     * @return Mailbox of the status changes reported by the Sensor
      */
-    public synchronized BlockingQueue<String> getQueue(){
+    public Mailbox<Message.Type> getQueue(){
         return this.queue;
     }
 
     /**
-     * Random traversal of the sensors by the first
-     * Agent thread. Will randomly choose a neighbor
-     * if there are more than two neighbors. For cases
-     * of 0, 1, or 2 neighbors, they are treated as
-     * special cases and have specific treatments.
+     * One step of the random traversal of the sensors by the first
+     * Agent. The neighbor to look at is picked by the WalkStrategy
+     * of the Scheduler. If it is alerted the Agent moves there and
+     * copies itself, if it is on fire the Agent copies itself onto
+     * the neighbors of the fire, otherwise the Agent moves there
      */
     private synchronized void randomWalk(){
-        List<Sensor> possible;
-        Random random = new Random();
-
-        //special cases
-        if(current != null){
+        if(current == null){
             //shouldn't be if we set it at creation
-            possible = current.getNeighbors();
-        }
-        else{
-            System.out.println("Current sensor not set");
+            Log.warn(-1, now(), "agent.no_sensor", "agent", agentId);
             return;
         }
-        if(possible.isEmpty()){
-            System.out.println("Node has no neighbors");
+        current.markVisited(scheduler.nextWalkStep());
+        Sensor next = scheduler.getWalkStrategy().choose(current, previous, scheduler.random());
+        if(next == null){
+            Log.warn(current.getId(), now(), "agent.no_neighbors", "agent", agentId);
             return;
         }
 
-        if(possible.size() == 1){
-            //move to only option
-            String status = possible.get(0).reportStatus();
-            if(status.equals("alert")){
-                this.moveAgent(possible.get(0));
-                //should be the current node now
-                this.fireProtocol(this.current);
-            }
-            else if(status.equals("fire")){
-                this.fireProtocol(this.current);
-            }
-            else{
-                this.moveAgent(possible.get(0));
-            }
+        Status status = next.getStatus();
+        if(status == Status.ALERT){
+            this.moveAgent(next);
+            this.fireProtocol(next);
         }
-        else if(possible.size() == 2){
-            if(this.previous != null){
-                possible.remove(this.previous);
-                //move to only remaining neighbor
-                String status = possible.get(0).reportStatus();
-                if(status.equals("alert")){
-                    this.moveAgent(possible.get(0));
-                    this.fireProtocol(possible.get(0));
-                }
-                else if(status.equals("fire")){
-                    //call fire protocol
-                    this.fireProtocol(this.current);
-                }
-                else{
-                    this.moveAgent(possible.get(0));
-                }
-            }
-            else{
-                //randomly choose a node
-                int rand = random.nextInt(2);
-                //move to index chosen if not on fire
-                String status = possible.get(rand).reportStatus();
-                if(status.equals("alert")){
-                    this.moveAgent(possible.get(rand));
-                    this.fireProtocol(possible.get(rand));
-                }
-                else if(status.equals("fire")){
-                    //call fire protocol
-                    this.fireProtocol(this.current);
-                }
-                else{
-                    this.moveAgent(possible.get(rand));
-                }
-            }
+        else if(status.isAtLeast(Status.FIRE)){
+            this.fireProtocol(next);
         }
         else{
-            if(this.previous != null){
-                possible.remove(this.previous);
+            this.moveAgent(next);
+        }
+    }
+
+    /**
+     * Sends out the other walkers of a WalkStrategy with more than one,
+     * each onto a free neighbor of the current Sensor. They share the
+     * search of this Agent, so all of them stop once one finds the fire
+     */
+    private void startWalkers(){
+        search = new AtomicBoolean(false);
+        int walkers = 1;
+        for(Sensor sensor: current.getNeighbors()){
+            if(walkers == scheduler.getWalkStrategy().walkers()){
+                break;
             }
-            //choose a random neighbor
-            int rand = random.nextInt(possible.size());
-            //move to this index if not on fire
-            String status = possible.get(rand).reportStatus();
-            if(status.equals("alert")){
-                this.moveAgent(possible.get(rand));
-                this.fireProtocol(possible.get(rand));
+            if(sensor.agentPresent() || sensor.getStatus().isAtLeast(Status.FIRE)){
+                continue;
             }
-            else if(status.equals("fire")){
-                this.fireProtocol(possible.get(rand));
+            Agent walker = scheduler.getAgentPool().acquire(this.getChildId(), sensor, false);
+            if(walker == null){
+                break;
             }
-            else{
-                this.moveAgent(possible.get(rand));
+            if(!sensor.tryClaim(walker)){
+                scheduler.getAgentPool().release(walker);
+                continue;
             }
+            walker.search = this.search;
+            walker.previous = this.current;
+            scheduler.start(walker);
+            walkers++;
         }
     }
 
@@ -158,16 +172,18 @@ public class Agent implements Runnable{
      * @param move Sensor chosen as new location of Agent
      */
     private synchronized void moveAgent(Sensor move){
-        String status = move.reportStatus();
-        if(!status.equals("dead") || !status.equals("fire")){
-            this.current.agentLeave();
-            move.agentMove(this);
+        Status status = move.getStatus();
+        if(status.isAtLeast(Status.FIRE)){
+            if(Log.isEnabled(Log.Level.DEBUG)){
+                Log.debug(move.getId(), now(), "agent.blocked", "status", status);
+            }
+        }
+        //the new Sensor is claimed first so the Agent is never on no Sensor at all
+        else if(move.tryClaim(this)){
+            this.current.release(this);
             this.previous = this.current;
             this.current = move;
         }
-        else{
-            System.out.println("Can't move agent to dead sensor");
-        }
     }
 
     /**
@@ -181,28 +197,35 @@ public class Agent implements Runnable{
     private synchronized void fireProtocol(Sensor alerted){
         //agent has found alerted sensor
         this.fireActive = true;
+        //the walk is over, a timer still pending must not keep waking the Agent
+        this.walkDue = false;
+        if(search != null){
+            search.set(true);
+        }
+        CloningStrategy strategy = scheduler.getCloningStrategy();
 
         for(Sensor sensor: alerted.getNeighbors()){
-            if(!sensor.agentPresent() && !sensor.reportStatus().equals("fire")){
+            if(!sensor.agentPresent() && strategy.isTarget(sensor)){
                 String idChild = this.getChildId();
                 //actual creation of the thread
-                Agent child = new Agent(idChild, sensor, true);
-                sensor.agentMove(child);
-                new Thread(child).start();
+                Agent child = scheduler.getAgentPool().acquire(idChild, sensor, true);
+                if(child == null){
+                    //too many Agents alive already
+                    break;
+                }
+                if(!sensor.tryClaim(child)){
+                    //another Agent got there first
+                    scheduler.getAgentPool().release(child);
+                    continue;
+                }
+                scheduler.start(child);
+                scheduler.countClone();
 
-                if(sensor.reportStatus().equals("alert")){
+                if(sensor.getStatus() == Status.ALERT){
                     child.fireProtocol(sensor);
                 }
 
-                try{
-                    String message = "Agent " + idChild  + " created at Sensor (" +
-                            sensor.getX() + ", " + sensor.getY() + ")";
-                    sensor.getQ().put(message);
-                }
-                catch(InterruptedException e){
-                    e.printStackTrace();
-                    System.out.println(this + " exited");
-                }
+                sensor.getQ().offer(Message.agentCreated(sensor, child, scheduler.now()));
             }
         }
     }
@@ -225,39 +248,242 @@ public class Agent implements Runnable{
     }
 
     /**
-     * The very first Agent does a random search until
-     * it finds a neighbor that is either alerted or on
-     * fire. Then the Agent copies itself on to the
-     * neighboring Sensors that are still alive. If the
-     * status of the current Sensor changes, then the
-     * Agent copies itself to its neighbors again.
-     * The Agent dies when the Sensor it is located on dies.
+     * Returns true once this Agent, or a walker searching with it, has found the fire
+     * @return boolean for whether the search is over
+     */
+    boolean hasFoundFire(){
+        return this.fireActive || (search != null && search.get());
+    }
+
+    /**
+     * Returns true while the AgentPool counts this Agent as live
+     * @return boolean for whether the Agent is counted
+     */
+    boolean isPooled(){
+        return this.pooled;
+    }
+
+    /**
+     * Marks whether the AgentPool counts this Agent as live
+     * @param pooled true once counted, false once given back
+     */
+    void setPooled(boolean pooled){
+        this.pooled = pooled;
+    }
+
+    //state read and written by a Checkpoint of the discrete event mode
+
+    /**
+     * Returns the task of an event of this Agent, to put it back on the Scheduler
+     * @param timer true for the random walk timer, false for a step
+     * @return Runnable the event runs
+     */
+    Runnable task(boolean timer){
+        return timer ? new WalkTimer(generation) : this::step;
+    }
+
+    /**
+     * Returns the task of a walk timer left from an earlier life of this Agent, which does nothing when it goes off
+     * @return Runnable of a stale walk timer
      */
-    public void run(){
-        try{
-            while(!this.fireActive){
-                Thread.sleep(1500);
-                if(!this.fireActive){
+    Runnable staleTimer(){
+        return new WalkTimer(generation - 1);
+    }
+
+    /**
+     * Returns true if the task is a walk timer of an earlier life of this Agent
+     * @param task task of a pending event of this Agent
+     * @return boolean for whether the timer is stale
+     */
+    boolean isStale(Runnable task){
+        return task instanceof WalkTimer && ((WalkTimer) task).life != generation;
+    }
+
+    /**
+     * Retrieves the Sensor the Agent is on
+     * @return Sensor the Agent is on
+     */
+    Sensor getCurrent(){
+        return this.current;
+    }
+
+    /**
+     * Retrieves the Sensor the Agent came from
+     * @return Sensor the Agent was on before, or null
+     */
+    Sensor getPrevious(){
+        return this.previous;
+    }
+
+    /**
+     * Returns the number of children created so far, which numbers the next one
+     * @return int number of children
+     */
+    int getChildren(){
+        return this.children;
+    }
+
+    /**
+     * Returns the search shared by the walkers of this Agent
+     * @return AtomicBoolean set once the fire is found, or null for a single walker
+     */
+    AtomicBoolean getSearch(){
+        return this.search;
+    }
+
+    /**
+     * Returns the flags of the Agent: 1 if it found the fire itself, 2 if a step is scheduled, 4 if the walk timer
+     * went off, 8 if it is set and 16 once the Agent is done
+     * @return int flags
+     */
+    int getActorFlags(){
+        return (fireActive ? 1 : 0) | (scheduled.get() ? 2 : 0) | (walkDue ? 4 : 0) | (walkArmed ? 8 : 0) |
+                (done ? 16 : 0);
+    }
+
+    /**
+     * Puts the Agent back in a saved state and attaches it to the Scheduler without waking it, since its pending
+     * events are put back by the Checkpoint
+     * @param scheduler Scheduler of the restored run
+     * @param current Sensor the Agent is on
+     * @param previous Sensor the Agent came from, or null
+     * @param children number of children created so far
+     * @param search search shared with other walkers, or null
+     * @param pending status changes waiting in the queue, in order
+     * @param pooled true if the AgentPool counts the Agent as live
+     * @param actorFlags flags as returned by getActorFlags
+     */
+    void restore(Scheduler scheduler, Sensor current, Sensor previous, int children, AtomicBoolean search,
+                 List<Message.Type> pending, boolean pooled, int actorFlags){
+        this.current = current;
+        this.previous = previous;
+        this.children = children;
+        this.search = search;
+        this.pooled = pooled;
+        this.fireActive = (actorFlags & 1) != 0;
+        this.scheduled.set((actorFlags & 2) != 0);
+        this.walkDue = (actorFlags & 4) != 0;
+        this.walkArmed = (actorFlags & 8) != 0;
+        this.done = (actorFlags & 16) != 0;
+        this.scheduler = scheduler;
+        for(Message.Type message: pending){
+            queue.offer(message);
+        }
+        queue.setListener(this::wake);
+    }
+
+    /**
+     * Called by the Scheduler when the Agent is started. The Agent has no thread of its own in any mode, it is
+     * woken up by its Mailbox and by its random walk timer
+     * @param scheduler Scheduler running this Agent
+     */
+    void attach(Scheduler scheduler){
+        this.scheduler = scheduler;
+        queue.setListener(this::wake);
+        if(!this.fireActive && search == null && scheduler.getWalkStrategy().walkers() > 1){
+            startWalkers();
+        }
+        wake();
+    }
+
+    /**
+     * Schedules a step of this Agent on the pool unless one is already scheduled or running
+     */
+    private void wake(){
+        if(scheduled.compareAndSet(false, true)){
+            scheduler.execute(this::step, this);
+        }
+    }
+
+    /**
+     * Called when the random walk timer goes off
+     * @param life generation of the Agent the timer was set in
+     */
+    private void walkTimer(int life){
+        if(life != generation){
+            //set before the Agent finished or was reused
+            return;
+        }
+        walkDue = true;
+        wake();
+    }
+
+    /**
+     * Walk timer of one life of the Agent
+     */
+    private class WalkTimer implements Runnable {
+
+        private final int life;
+
+        private WalkTimer(int life){
+            this.life = life;
+        }
+
+        @Override
+        public void run(){
+            walkTimer(life);
+        }
+    }
+
+    /**
+     * One turn of the Agent. The very first Agent does a random search, one
+     * step each time the walk timer goes off, until it finds a neighbor that
+     * is either alerted or on fire. Then the Agent copies itself on to the
+     * neighboring Sensors that are still alive. If the status of the current
+     * Sensor changes, then the Agent copies itself to its neighbors again.
+     * The Agent dies when the Sensor it is located on dies, and goes back to
+     * the AgentPool.
+     */
+    private void step(){
+        if(!done){
+            if(!this.fireActive && search != null && search.get()){
+                //another walker found the fire
+                this.current.release(this);
+                done = true;
+            }
+            else if(!this.fireActive){
+                if(walkDue){
+                    walkDue = false;
+                    walkArmed = false;
                     this.randomWalk();
                 }
+                if(!this.fireActive && !walkArmed){
+                    walkArmed = true;
+                    scheduler.schedule(new WalkTimer(generation), 1500, this);
+                }
             }
-            boolean onFire = false;
-            while(!onFire){
-                while(!this.queue.isEmpty()){
-                    String message = queue.take();
-                    if(message.equals("alert")){
+            if(this.fireActive){
+                Message.Type message;
+                while(!done && (message = queue.poll()) != null){
+                    //the Sensor is checked since a message may have been sent to this Agent before it was recycled
+                    if(message == Message.Type.ALERT && this.current.getStatus().isAtLeast(Status.ALERT)){
                         this.fireProtocol(this.current);
+                        if(!scheduler.getCloningStrategy().keeps(this.current)){
+                            //no longer on the perimeter of the fire
+                            this.current.release(this);
+                            done = true;
+                        }
                     }
-                    else if(message.equals("fire")){
-                        this.current.agentLeave();
-                        onFire = true;
+                    else if(message == Message.Type.FIRE && this.current.getStatus().isAtLeast(Status.FIRE)){
+                        if(scheduler.getCloningStrategy().handsOver()){
+                            this.fireProtocol(this.current);
+                        }
+                        this.current.release(this);
+                        done = true;
                     }
                 }
             }
-        } catch (InterruptedException e){
-            e.printStackTrace();
         }
-
+        scheduled.set(false);
+        if(done){
+            generation++;
+            scheduler.getAgentPool().release(this);
+            return;
+        }
+        //a message may have come in after the queue was drained
+        if(this.fireActive ? !queue.isEmpty() : walkDue){
+            wake();
+        }
     }
 
 }
@@ -0,0 +1,226 @@
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hands out the Agents copied onto Sensors during a fire and takes them back once their Sensor burns, so a run
+ * creates about as many Agent objects as there are Agents alive at once rather than one per copy.
+ *
+ * The pool also puts a cap on the number of Agents alive at once: once it is reached no more copies are made until
+ * an Agent finishes. The most Agents alive in each second of the Scheduler clock are kept for the last SAMPLES
+ * seconds in which the number changed, which gives the population of Agents over the run in a fixed amount of memory.
+ */
+public class AgentPool {
+
+    /**
+     * Number of live Agents allowed when no cap is given
+     */
+    public static final int UNLIMITED = Integer.MAX_VALUE;
+
+    //intervals of the population kept, older ones are overwritten
+    private static final int SAMPLES = 4096;
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private final Scheduler scheduler;
+    private final int cap;
+    private final ConcurrentLinkedQueue<Agent> free = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger live = new AtomicInteger();
+    private final AtomicInteger peak = new AtomicInteger();
+    private final AtomicInteger created = new AtomicInteger();
+    private final AtomicInteger reused = new AtomicInteger();
+    private final AtomicInteger rejected = new AtomicInteger();
+
+    //population over time, a ring of intervals since the pool was created and the most live Agents in each
+    private final long[] intervals = new long[SAMPLES];
+    private final int[] peaks = new int[SAMPLES];
+    private long sampled = 0;
+    private final long origin;
+
+    /**
+     * Creates an empty pool
+     * @param scheduler Scheduler the Agents run on, its clock times the population
+     * @param cap largest number of Agents alive at once, UNLIMITED for no cap
+     */
+    public AgentPool(Scheduler scheduler, int cap){
+        if(cap < 1){
+            throw new IllegalArgumentException("cap must be at least 1: " + cap);
+        }
+        this.scheduler = scheduler;
+        this.cap = cap;
+        this.origin = scheduler.now();
+    }
+
+    /**
+     * Takes an Agent for a copy onto the given Sensor, reusing one that has finished if there is one. The Agent
+     * counts as live from now on
+     * @param id id of the new Agent
+     * @param sensor Sensor the copy is made on
+     * @param fire false for an Agent that still has to find the fire
+     * @return the Agent, or null if the cap on live Agents has been reached
+     */
+    public Agent acquire(String id, Sensor sensor, boolean fire){
+        int current;
+        do{
+            current = live.get();
+            if(current >= cap){
+                rejected.incrementAndGet();
+                return null;
+            }
+        } while(!live.compareAndSet(current, current + 1));
+        changed(current + 1);
+
+        Agent agent = free.poll();
+        if(agent == null){
+            created.incrementAndGet();
+            agent = new Agent(id, sensor, fire);
+        }
+        else{
+            reused.incrementAndGet();
+            agent.reset(id, sensor, fire);
+        }
+        agent.setPooled(true);
+        return agent;
+    }
+
+    /**
+     * Counts an Agent that was not taken from the pool, such as the first one, as live. Goes over the cap if needed
+     * @param agent Agent that was started
+     */
+    void adopt(Agent agent){
+        if(!agent.isPooled()){
+            agent.setPooled(true);
+            changed(live.incrementAndGet());
+        }
+    }
+
+    /**
+     * Gives back an Agent that has finished or was never started. It no longer counts as live and may be handed out
+     * again
+     * @param agent Agent to recycle
+     */
+    public void release(Agent agent){
+        if(agent.isPooled()){
+            agent.setPooled(false);
+            changed(live.decrementAndGet());
+            free.offer(agent);
+        }
+    }
+
+    /**
+     * Returns the number of Agents alive right now
+     * @return int live Agents
+     */
+    public int getLive(){
+        return live.get();
+    }
+
+    /**
+     * Returns the largest number of Agents that were alive at once
+     * @return int peak of live Agents
+     */
+    public int getPeak(){
+        return peak.get();
+    }
+
+    /**
+     * Returns the number of Agent objects the pool had to create
+     * @return int Agents created
+     */
+    public int getCreated(){
+        return created.get();
+    }
+
+    /**
+     * Returns the number of times a finished Agent was handed out again
+     * @return int Agents reused
+     */
+    public int getReused(){
+        return reused.get();
+    }
+
+    /**
+     * Returns the number of copies that were not made because of the cap
+     * @return int copies refused
+     */
+    public int getRejected(){
+        return rejected.get();
+    }
+
+    /**
+     * Returns the largest number of Agents allowed alive at once
+     * @return int cap, UNLIMITED if there is none
+     */
+    public int getCap(){
+        return this.cap;
+    }
+
+    /**
+     * Copies the finished Agents waiting to be handed out again, in the order they will be
+     * @return Agent[] of the free Agents
+     */
+    Agent[] getFree(){
+        return free.toArray(new Agent[0]);
+    }
+
+    /**
+     * Puts the pool back in a saved state. The live Agents are counted by adopting them afterwards
+     * @param freeAgents finished Agents waiting to be handed out again, in order
+     * @param peak largest number of Agents alive at once
+     * @param created Agent objects created
+     * @param reused times a finished Agent was handed out again
+     * @param rejected copies refused because of the cap
+     */
+    void restore(List<Agent> freeAgents, int peak, int created, int reused, int rejected){
+        free.clear();
+        free.addAll(freeAgents);
+        this.peak.set(peak);
+        this.created.set(created);
+        this.reused.set(reused);
+        this.rejected.set(rejected);
+    }
+
+    /**
+     * Counts a restored Agent as live without recording a change in the population
+     */
+    void restoreLive(){
+        live.incrementAndGet();
+    }
+
+    /**
+     * Prints the population of Agents over the run as CSV, one line per second in which it changed, oldest first.
+     * Only the last SAMPLES of them are kept
+     * @param out stream to print to
+     */
+    public void printPopulation(PrintStream out){
+        out.println("millis,peakLiveAgents");
+        synchronized(peaks){
+            for(long i = Math.max(0, sampled - SAMPLES); i < sampled; i++){
+                int slot = (int) (i % SAMPLES);
+                out.println(TimeUnit.NANOSECONDS.toMillis(intervals[slot] * INTERVAL_NANOS) + "," + peaks[slot]);
+            }
+        }
+    }
+
+    /**
+     * Records a new number of live Agents
+     */
+    private void changed(int count){
+        peak.accumulateAndGet(count, Math::max);
+        long interval = (scheduler.now() - origin) / INTERVAL_NANOS;
+        synchronized(peaks){
+            int slot = (int) ((sampled + SAMPLES - 1) % SAMPLES);
+            //a thread that read the clock just before another one moved on counts in the newer interval
+            if(sampled > 0 && interval <= intervals[slot]){
+                peaks[slot] = Math.max(peaks[slot], count);
+            }
+            else{
+                slot = (int) (sampled++ % SAMPLES);
+                intervals[slot] = interval;
+                peaks[slot] = count;
+            }
+        }
+    }
+}
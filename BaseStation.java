@@ -1,11 +1,10 @@
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.BlockingQueue;
 
 public class BaseStation extends Sensor{
 
-    private List<String> log = new ArrayList<>();
-    //private BlockingQueue q;
+    //messages as they arrive, their text is only built when the log is read
+    private final EventLog log = new EventLog();
 
     /**
      * Constructor for the BaseStation
@@ -20,28 +19,43 @@ public class BaseStation extends Sensor{
 
     /**
      * Method to receive a message from a neighboring node.
-     * @param message String to be added to the Base
+     * @param message Message to be added to the Base
      * Station log
      */
-    public void addLog(String message){
-        log.add(message);
+    public void addLog(Message message){
+        log.append(message);
     }
 
     /**
-     * Adds message to Base Station log
-     * when the Base Station is on fire
+     * Retrieves the Base Station log. Read it
+     * with a cursor to go through every message
+     * @return EventLog of the messages received
      */
-    private void baseFire(){
-        log.add("Base station on fire");
+    public EventLog getEventLog(){
+        return this.log;
     }
 
     /**
-     * Retrieves the Base Station log
-     * @return List of String messages
-     * held by the Base Station
+     * Builds the text of a message of the log
+     * @param message Message received by the Base Station
+     * @return String describing the message
      */
-    public List<String> getLog(){
-        return this.log;
+    public String describe(Message message){
+        return message.describe(getGraph().getSensorById(message.getSource()));
+    }
+
+    /**
+     * Retrieves the text of the last messages
+     * received, oldest first
+     * @return List of at most EventLog.WINDOW
+     * String messages
+     */
+    public List<String> getRecentLog(){
+        List<String> lines = new ArrayList<>();
+        for(Message message: log.getRecent()){
+            lines.add(describe(message));
+        }
+        return lines;
     }
 
 }
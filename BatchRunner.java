@@ -0,0 +1,149 @@
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Runs many headless simulations of one configuration file in parallel and writes percentiles of their results.
+ *
+ * The file is loaded once, and every run gets fresh Sensors and Agents on top of the shared, frozen topology. Runs
+ * use the discrete event Scheduler, so each one is single threaded and repeatable, and the runs are spread over
+ * every core. Run i uses the seed firstSeed + i. With "random" fire the start of the fire is picked from that seed
+ * as well, otherwise every run starts the fire where the configuration file says.
+ *
+ * Runs where the fire did not reach the Base Station before the time limit are left out of the time to reach it, and
+ * counted on a line of their own.
+ *
+ * Usage: java BatchRunner configFile runs [firstSeed] [fixed|random] [output.csv]
+ */
+public class BatchRunner {
+
+    private static final double[] PERCENTILES = {0, 50, 90, 95, 99, 100};
+
+    public static void main(String[] args) throws IOException, InterruptedException, ExecutionException {
+        if(args.length < 2){
+            System.err.println("Usage: java BatchRunner configFile runs [firstSeed] [fixed|random] [output.csv]");
+            System.exit(2);
+        }
+        int runs = Integer.parseInt(args[1]);
+        long firstSeed = args.length > 2 ? Long.parseLong(args[2]) : 1;
+        boolean randomFire = args.length > 3 && args[3].equalsIgnoreCase("random");
+        String output = args.length > 4 ? args[4] : "batch_results.csv";
+
+        Simulation template = new Simulation(args[0]);
+        Graph topology = template.getGraph();
+        int configuredFire = template.getFireStart().getId();
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        List<Future<Simulation.Result>> futures = new ArrayList<>();
+        for(int i = 0; i < runs; i++){
+            long seed = firstSeed + i;
+            int fire = randomFire ? randomFireStart(topology, seed) : configuredFire;
+            futures.add(executor.submit(() -> new Simulation(topology, fire).run(seed)));
+        }
+        List<Simulation.Result> results = new ArrayList<>();
+        for(Future<Simulation.Result> future: futures){
+            results.add(future.get());
+        }
+        executor.shutdown();
+
+        write(results, output);
+        System.out.println(runs + " runs written to " + output);
+    }
+
+    /**
+     * Picks a Sensor other than the Base Station for the fire to start on
+     * @param topology Graph to pick from
+     * @param seed seed of the run
+     * @return int id of the Sensor
+     */
+    private static int randomFireStart(Graph topology, long seed){
+        Random random = new Random(seed ^ 0x5DEECE66DL);
+        int baseStation = topology.getBaseStation().getId();
+        int id;
+        do{
+            id = random.nextInt(topology.getSizeOfGraph());
+        } while(id == baseStation && topology.getSizeOfGraph() > 1);
+        return id;
+    }
+
+    /**
+     * Writes one line per measure with its mean and percentiles over the runs
+     * @param results Results of every run
+     * @param fileName path of the CSV file
+     * @throws IOException if the file cannot be written
+     */
+    private static void write(List<Simulation.Result> results, String fileName) throws IOException {
+        int n = results.size();
+        double[] agents = new double[n];
+        double[] logged = new double[n];
+        int reached = 0;
+        for(int i = 0; i < n; i++){
+            Simulation.Result result = results.get(i);
+            agents[i] = result.getAgentsCreated();
+            //share of the cloned agents whose creation message made it into the log
+            int clones = result.getClonesCreated();
+            logged[i] = clones == 0 ? 1 : result.getDistinctLogEntries() / (double) clones;
+            if(result.reachedBase()){
+                reached++;
+            }
+        }
+        //runs stopped by the time limit never reached the Base Station, their time would only be the limit
+        double[] baseFire = new double[reached];
+        int next = 0;
+        for(Simulation.Result result: results){
+            if(result.reachedBase()){
+                baseFire[next++] = result.getBaseFireMillis();
+            }
+        }
+
+        try(PrintWriter writer = new PrintWriter(new FileWriter(fileName))){
+            StringBuilder header = new StringBuilder("measure,runs,mean");
+            for(double p: PERCENTILES){
+                header.append(",p").append((int) p);
+            }
+            writer.println(header);
+            writer.println(row("timeToBaseFireMillis", baseFire));
+            writer.println(row("agentsCreated", agents));
+            writer.println(row("shareOfAlertsLogged", logged));
+            writer.println("runsReachingBase," + n + "," + (n == 0 ? 0 : reached / (double) n));
+            writer.println("runsCensored," + n + "," + (n - reached));
+        }
+    }
+
+    private static String row(String name, double[] values){
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double sum = 0;
+        for(double value: sorted){
+            sum += value;
+        }
+        StringBuilder row = new StringBuilder(name).append(',').append(sorted.length).append(',')
+                .append(sorted.length == 0 ? 0 : sum / sorted.length);
+        for(double p: PERCENTILES){
+            row.append(',').append(percentile(sorted, p));
+        }
+        return row.toString();
+    }
+
+    /**
+     * Nearest rank percentile of sorted values
+     * @param sorted values in ascending order
+     * @param p percentile from 0 to 100
+     * @return double value at that percentile, 0 if there are no values
+     */
+    static double percentile(double[] sorted, double p){
+        if(sorted.length == 0){
+            return 0;
+        }
+        int rank = (int) Math.ceil(p / 100.0 * sorted.length);
+        return sorted[Math.max(0, Math.min(sorted.length - 1, rank - 1))];
+    }
+}
@@ -0,0 +1,127 @@
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * The workloads of the JMH benchmarks in the benchmarks package: loading a configuration file, walking the neighbors
+ * of every Sensor, relaying messages to the Base Station, and Agents copying themselves over an alerted graph.
+ *
+ * The classes of this project are in the default package, which classes in a package cannot name, so the benchmarks
+ * create a BenchmarkShim by reflection and call its public methods through method handles. Every method returns a
+ * number computed from its work so JMH can consume it and the JIT cannot drop the work.
+ *
+ * A shim writes one synthetic graph from the TopologyGenerator, with the station in a corner and the fire as far from
+ * it as the graph allows, and keeps its topology for the runs. The relay and cloning runs need a fresh copy of the
+ * Graph each time, made by prepareRelay() and prepareCloning(), which are not meant to be measured.
+ */
+public final class BenchmarkShim {
+
+    //messages injected per run of the relay benchmark
+    private static final int RELAY_MESSAGES = 64;
+
+    private final File config;
+    private final Graph topology;
+    private final int farthest;
+
+    private Graph graph;
+    private Scheduler scheduler;
+
+    /**
+     * Writes the configuration file and loads its topology
+     * @param family name of a TopologyGenerator.Family, case does not matter
+     * @param size number of Sensors
+     * @param degree average number of neighbors
+     * @throws IOException if the file cannot be written or read
+     */
+    public BenchmarkShim(String family, int size, int degree) throws IOException {
+        Log.setLevel(Log.Level.WARN);
+        config = File.createTempFile("bench_" + size + "_" + degree + "_", ".txt");
+        config.deleteOnExit();
+        new TopologyGenerator(TopologyGenerator.Family.valueOf(family.toUpperCase()), size, degree, 1)
+                .write(config.getPath());
+        Simulation template = new Simulation(config.getPath());
+        topology = template.getGraph();
+        farthest = template.getFireStart().getId();
+    }
+
+    /**
+     * Loads the configuration file into a new Graph
+     * @return long number of Sensors loaded
+     * @throws IOException if the file cannot be read
+     */
+    public long load() throws IOException {
+        Graph loaded = new Graph();
+        new ConfigLoader().load(config.getPath(), loaded);
+        return loaded.getSizeOfGraph();
+    }
+
+    /**
+     * Visits the neighbors of every Sensor through Sensor.getNeighbors
+     * @return long sum of the ids of the neighbors visited
+     */
+    public long iterateNeighbors(){
+        long checksum = 0;
+        for(int id = 0; id < topology.getSizeOfGraph(); id++){
+            for(Sensor neighbor: topology.getSensorById(id).getNeighbors()){
+                checksum += neighbor.getId();
+            }
+        }
+        return checksum;
+    }
+
+    /**
+     * Copies the topology and puts RELAY_MESSAGES messages on the Sensor furthest from the Base Station
+     */
+    public void prepareRelay(){
+        graph = topology.instantiate();
+        scheduler = new Scheduler(Scheduler.Mode.DISCRETE_EVENT, 1);
+        graph.startThreadsForAllSensors(scheduler);
+        Sensor from = graph.getSensorById(farthest);
+        Agent agent = new Agent("0", from, true);
+        for(int i = 0; i < RELAY_MESSAGES; i++){
+            from.getQ().offer(Message.agentCreated(from, agent, 0));
+        }
+    }
+
+    /**
+     * Relays the prepared messages until every one reached the Base Station or was dropped
+     * @return long number of events the Scheduler ran
+     */
+    public long relay(){
+        scheduler.runUntil(() -> false, Long.MAX_VALUE / 1_000_000);
+        return scheduler.getEventsRun();
+    }
+
+    /**
+     * Copies the topology, alerts every Sensor and puts the first Agent on the Sensor furthest from the Base Station
+     */
+    public void prepareCloning(){
+        graph = topology.instantiate();
+        scheduler = new Scheduler(Scheduler.Mode.DISCRETE_EVENT, 1);
+        graph.startThreadsForAllSensors(scheduler);
+        for(int id = 0; id < graph.getSizeOfGraph(); id++){
+            graph.getSensorById(id).getQ().offer(Message.ALERT);
+        }
+        scheduler.runUntil(() -> false, 0);
+        Sensor start = graph.getSensorById(farthest);
+        Agent agent = new Agent("1", start, true);
+        start.agentMove(agent);
+        scheduler.start(agent);
+        agent.getQueue().offer(Message.Type.ALERT);
+    }
+
+    /**
+     * Lets the Agent copy itself over the alerted graph until no copy is left to make
+     * @return long number of Agents started
+     */
+    public long cloning(){
+        scheduler.runUntil(() -> false, Long.MAX_VALUE / 1_000_000);
+        return scheduler.getAgentsStarted();
+    }
+
+    /**
+     * Deletes the configuration file
+     */
+    public void close(){
+        config.delete();
+    }
+}
@@ -0,0 +1,211 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Studies of the whole simulation that are not micro benchmarks, which are the JMH benchmarks in the benchmarks
+ * package.
+ *
+ * With "hitting" as the first argument it measures the walk strategies: for every graph family, size, degree and
+ * WalkStrategy it reports the mean number of walk rounds the first Agent takes to find a fire on the Sensor furthest
+ * from the Base Station, and the mean number of steps of all walkers together. The fire does not spread while the
+ * Agent walks.
+ *
+ * With "checkpoint" as the first argument it runs the whole simulation with a Checkpoint every interval of virtual
+ * time and reports how many were taken, how long the run stopped for each, and their size before and after
+ * compression. It also checks that the run gave the same Result as one without checkpoints, and that resuming from
+ * the last checkpoint written gives that Result too.
+ *
+ * Every study runs on synthetic graphs from the TopologyGenerator for each combination of size and degree, and the
+ * console output of the simulation is discarded while it runs.
+ *
+ * Usage: java Benchmarks hitting [sizes] [degrees] [runs], for example java Benchmarks hitting 500,2000 4 20
+ *        java Benchmarks checkpoint [sizes] [degrees] [interval millis] [family]
+ */
+public class Benchmarks {
+
+    private static final PrintStream CONSOLE = System.out;
+    private static final PrintStream DISCARD = new PrintStream(OutputStream.nullOutputStream());
+
+    //time between two steps of the random walk, and how many rounds per Sensor a walk may take
+    private static final long WALK_PERIOD_MILLIS = 1500;
+    private static final int WALK_LIMIT_ROUNDS = 50;
+
+    public static void main(String[] args) throws Exception {
+        if(args.length > 0 && args[0].equals("hitting")){
+            hittingTimes(parseList(args.length > 1 ? args[1] : "500,2000"), parseList(args.length > 2 ? args[2] : "4"),
+                    args.length > 3 ? Integer.parseInt(args[3]) : 20);
+        }
+        else if(args.length > 0 && args[0].equals("checkpoint")){
+            checkpoints(parseList(args.length > 1 ? args[1] : "2000,20000"), parseList(args.length > 2 ? args[2] : "4"),
+                    args.length > 3 ? Long.parseLong(args[3]) : 30000, args.length > 4 ?
+                    TopologyGenerator.Family.valueOf(args[4].toUpperCase()) : TopologyGenerator.Family.RING);
+        }
+        else{
+            System.err.println("Usage: java Benchmarks hitting [sizes] [degrees] [runs]");
+            System.err.println("       java Benchmarks checkpoint [sizes] [degrees] [interval millis] [family]");
+            System.err.println("The micro benchmarks are run with JMH: mvn -B package, then java -jar target/benchmarks.jar");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Prints the expected hitting time of every WalkStrategy on every graph family. Each run has its own seed, and a
+     * run that has not found the fire after WALK_LIMIT_ROUNDS rounds per Sensor counts as not found and is left out
+     * of the means
+     * @param sizes numbers of Sensors
+     * @param degrees average numbers of neighbors
+     * @param runs runs per strategy, family, size and degree
+     * @throws IOException if a configuration file cannot be written or read
+     */
+    private static void hittingTimes(int[] sizes, int[] degrees, int runs) throws IOException {
+        CONSOLE.printf("%-10s %-22s %8s %6s %12s %12s %8s%n", "family", "strategy", "size", "degree", "rounds",
+                "steps", "found");
+        for(TopologyGenerator.Family family: TopologyGenerator.Family.values()){
+            for(int size: sizes){
+                for(int degree: degrees){
+                    File config = writeConfig(family, size, degree);
+                    System.setOut(DISCARD);
+                    try{
+                        Simulation template = new Simulation(config.getPath());
+                        for(WalkStrategy strategy: WalkStrategy.values()){
+                            long rounds = 0;
+                            long steps = 0;
+                            int found = 0;
+                            for(int run = 0; run < runs; run++){
+                                Scheduler scheduler = hittingRun(template, strategy, run + 1, size);
+                                if(scheduler != null){
+                                    rounds += scheduler.now() / TimeUnit.MILLISECONDS.toNanos(WALK_PERIOD_MILLIS);
+                                    steps += scheduler.getWalkSteps();
+                                    found++;
+                                }
+                            }
+                            if(found == 0){
+                                CONSOLE.printf("%-10s %-22s %8d %6d %12s %12s %5d/%d%n", family, strategy, size,
+                                        degree, "-", "-", found, runs);
+                            }
+                            else{
+                                CONSOLE.printf("%-10s %-22s %8d %6d %12.1f %12.1f %5d/%d%n", family, strategy, size,
+                                        degree, rounds / (double) found, steps / (double) found, found, runs);
+                            }
+                        }
+                    } finally{
+                        System.setOut(CONSOLE);
+                        config.delete();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Lets the first Agent walk from the Base Station until it finds the fire. The fire is put on the Sensor where
+     * the configuration starts it and its neighbors are alerted, without any Sensor running
+     * @param template Simulation holding the topology and the fire start
+     * @param strategy how the Agent walks
+     * @param seed seed of the run
+     * @param size number of Sensors, which sets the time limit
+     * @return the Scheduler once the fire is found, or null if it was not found in time
+     */
+    private static Scheduler hittingRun(Simulation template, WalkStrategy strategy, long seed, int size){
+        Graph graph = template.getGraph().instantiate();
+        Scheduler scheduler = new Scheduler(Scheduler.Mode.DISCRETE_EVENT, seed);
+        scheduler.setWalkStrategy(strategy);
+        Sensor fire = graph.getSensorById(template.getFireStart().getId());
+        fire.advanceTo(Status.FIRE);
+        for(Sensor neighbor: fire.getNeighbors()){
+            neighbor.advanceTo(Status.ALERT);
+        }
+        Sensor station = graph.getBaseStation();
+        Agent agent = new Agent("1", station, false);
+        station.agentMove(agent);
+        scheduler.start(agent);
+        long limit = WALK_PERIOD_MILLIS * WALK_LIMIT_ROUNDS * (long) size;
+        return scheduler.runUntil(agent::hasFoundFire, limit) ? scheduler : null;
+    }
+
+    /**
+     * Runs the simulation with and without checkpoints, then resumes it from the last one, and reports the cost of
+     * the checkpoints and whether the three runs agree
+     * @param sizes numbers of Sensors
+     * @param degrees average numbers of neighbors
+     * @param everyMillis virtual time between two checkpoints
+     * @param family shape of the graphs
+     * @throws IOException if a configuration or checkpoint file cannot be written or read
+     */
+    private static void checkpoints(int[] sizes, int[] degrees, long everyMillis, TopologyGenerator.Family family)
+            throws IOException {
+        CONSOLE.printf("%8s %6s %6s %12s %12s %12s %12s %8s %8s%n", "size", "degree", "taken", "pause us",
+                "max us", "raw bytes", "file bytes", "same", "resumed");
+        for(int size: sizes){
+            for(int degree: degrees){
+                File config = writeConfig(family, size, degree);
+                File file = File.createTempFile("bench_" + size + "_" + degree + "_", ".chk");
+                System.setOut(DISCARD);
+                try{
+                    Simulation.Result plain = new Simulation(config.getPath()).run(1);
+                    Simulation checkpointed = new Simulation(config.getPath());
+                    checkpointed.setCheckpoints(everyMillis, file);
+                    Simulation.Result result = checkpointed.run(1);
+                    List<Checkpoint.Stats> stats = checkpointed.getCheckpointStats();
+                    String resumed = "-";
+                    if(!stats.isEmpty()){
+                        resumed = String.valueOf(sameRun(plain,
+                                new Simulation(config.getPath()).resume(Checkpoint.read(file))));
+                    }
+                    long pause = 0, maxPause = 0, raw = 0, bytes = 0;
+                    for(Checkpoint.Stats checkpoint: stats){
+                        pause += checkpoint.getPauseNanos();
+                        maxPause = Math.max(maxPause, checkpoint.getPauseNanos());
+                        raw += checkpoint.getRawBytes();
+                        bytes += checkpoint.getFileBytes();
+                    }
+                    int taken = Math.max(1, stats.size());
+                    CONSOLE.printf("%8d %6d %6d %12d %12d %12d %12d %8s %8s%n", size, degree, stats.size(),
+                            TimeUnit.NANOSECONDS.toMicros(pause / taken), TimeUnit.NANOSECONDS.toMicros(maxPause),
+                            raw / taken, bytes / taken, sameRun(plain, result), resumed);
+                } finally{
+                    System.setOut(CONSOLE);
+                    config.delete();
+                    file.delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns true if two runs had the same outcome, leaving out the wall clock time
+     */
+    private static boolean sameRun(Simulation.Result first, Simulation.Result second){
+        String a = first.toString();
+        String b = second.toString();
+        return a.substring(0, a.lastIndexOf(',')).equals(b.substring(0, b.lastIndexOf(',')));
+    }
+
+    /**
+     * Writes a synthetic graph with the TopologyGenerator, the station in a corner and the fire as far from it as
+     * the graph allows
+     * @param family shape of the graph
+     * @param size number of Sensors
+     * @param degree average number of neighbors
+     * @return the temporary file
+     * @throws IOException if the file cannot be written
+     */
+    private static File writeConfig(TopologyGenerator.Family family, int size, int degree) throws IOException {
+        File file = File.createTempFile("bench_" + size + "_" + degree + "_", ".txt");
+        new TopologyGenerator(family, size, degree, 1).write(file.getPath());
+        return file;
+    }
+
+    private static int[] parseList(String list){
+        String[] parts = list.split(",");
+        int[] values = new int[parts.length];
+        for(int i = 0; i < parts.length; i++){
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
@@ -0,0 +1,552 @@
+import javafx.geometry.Point2D;
+import javafx.scene.SnapshotParameters;
+import javafx.scene.canvas.Canvas;
+import javafx.scene.canvas.GraphicsContext;
+import javafx.scene.control.Label;
+import javafx.scene.image.Image;
+import javafx.scene.input.MouseButton;
+import javafx.scene.layout.Pane;
+import javafx.scene.paint.Color;
+import javafx.scene.text.Font;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Draws the simulation onto Canvases instead of one scene graph node per Sensor and edge, for graphs too big for the
+ * Display class. The edges are on a Canvas of their own, stroked as one path, and only drawn again when the view
+ * moves. The Sensors are on a second Canvas on top, each one a copy of a circle rendered once per color. When the view
+ * moves every Sensor is drawn again, otherwise only the Sensors that changed since the last frame: the box around
+ * each is cleared and the Sensors reaching into it drawn again inside it, found through a grid of the screen.
+ *
+ * The mouse wheel zooms around the pointer and dragging pans the view. Edges and Sensors outside the view are skipped,
+ * and so are edges shorter than a pixel. Once the circles get smaller than a pixel the Sensors are drawn as single
+ * pixels, grouped by color.
+ *
+ * Given a TracePlayer it plays a recorded run back instead, painting the Sensors from the state of the player.
+ */
+public class CanvasDisplay implements GraphicsInterface, DisplayBackend{
+
+    //radius of a Sensor and of the mark of an Agent at the zoom that fits the graph, as in Display
+    private static final double NODE_RADIUS = 7;
+    private static final double AGENT_RADIUS = 10;
+    //largest zoom, relative to the fit, the circles keep growing to
+    private static final double MAX_NODE_ZOOM = 2;
+    private static final double ZOOM_STEP = 1.1;
+    private static final Color[] COLORS = {Color.BLACK, Color.BLUE, Color.YELLOW, Color.RED};
+
+    private Pane pane;
+    private Graph graph;
+    private Canvas edgeLayer;
+    private Canvas nodeLayer;
+
+    //positions of the Sensors in graph coordinates and the edges as pairs of ids, copied once from the Graph
+    private final double[] xs;
+    private final double[] ys;
+    private final int[] edges;
+
+    //screen position of every Sensor in the current view
+    private final double[] screenX;
+    private final double[] screenY;
+
+    //the view: screen = graph * scale + translate
+    private final double fitScale;
+    private double scale;
+    private double translateX, translateY;
+    private double dragX, dragY;
+
+    private Image[] sprites;
+    private Image agentSprite;
+
+    private boolean viewChanged = true;
+    //one bit per Sensor that changed since the last frame, set from any thread, and how many bits were set
+    private final AtomicLongArray dirty;
+    private final AtomicInteger dirtyCount = new AtomicInteger();
+
+    //color of every Sensor as last drawn, -1 when out of the view
+    private final byte[] colors;
+
+    //the visible Sensors bucketed by the square cell of the screen they are in, in order of id within a cell, so a
+    //cell's ids run from cellStarts[cell] to cellStarts[cell + 1] in cellIds
+    private double reach;
+    private double cellSize;
+    private int gridColumns, gridRows;
+    private int[] cellStarts = new int[0];
+    private final int[] cellIds;
+    //Sensors in the view, and how many are drawn on average when the box around one of them is drawn again
+    private int visibleCount;
+    private double nearbyPerSensor;
+    //ids of the Sensors around a changed one, reused every frame
+    private int[] nearby = new int[64];
+
+    //reads the base station log from where the last frame stopped
+    private EventLog.Cursor logCursor = null;
+    //number of base station log lines on screen
+    private int logLines = 0;
+
+    //plays back a recorded run, null when showing the live run
+    private TracePlayer player;
+    private Label replayLabel = null;
+
+    /**
+     * Creates the Canvases and fits the graph onto them
+     * @param pane
+     * @param graph
+     */
+    public CanvasDisplay(Pane pane, Graph graph){
+        this(pane, graph, null);
+    }
+
+    /**
+     * Creates the Canvases to play back a recorded run of the Graph
+     * @param pane
+     * @param graph Graph the trace was recorded on
+     * @param player TracePlayer of the run, or null to show the live run
+     */
+    public CanvasDisplay(Pane pane, Graph graph, TracePlayer player){
+        this.pane = pane;
+        this.graph = graph;
+        this.player = player;
+
+        double width = WINDOWWIDTH - 200;
+        double height = WIDOWHEIGHT;
+
+        //the same fit Display uses, as the starting view
+        double minMultiplierX = (width - 2 * GRAPHOFFSETX) / (1.0 * (graph.getMaxX() - graph.getMinX()));
+        double minMultiplierY = (height - 2 * GRAPHOFFSETY) / (1.0 * (graph.getMaxY() - graph.getMinY()));
+        fitScale = Math.min(minMultiplierX, minMultiplierY);
+        scale = fitScale;
+        translateX = GRAPHOFFSETX - scale * graph.getMinX();
+        translateY = GRAPHOFFSETY - scale * graph.getMinY();
+
+        int size = graph.getSizeOfGraph();
+        xs = new double[size];
+        ys = new double[size];
+        screenX = new double[size];
+        screenY = new double[size];
+        colors = new byte[size];
+        cellIds = new int[size];
+        dirty = new AtomicLongArray((size + 63) >>> 6);
+        IntList pairs = new IntList();
+        for(int id = 0; id < size; id++){
+            Sensor sensor = graph.getSensorById(id);
+            xs[id] = sensor.getX();
+            ys[id] = sensor.getY();
+            for(int k = 0; k < graph.getDegree(id); k++){
+                int other = graph.getNeighborId(id, k);
+                //each edge is in the adjacency of both its sensors, keep it from the lower id only
+                if(other > id){
+                    pairs.add(id);
+                    pairs.add(other);
+                }
+            }
+        }
+        edges = pairs.toArray();
+
+        edgeLayer = new Canvas(width, height);
+        nodeLayer = new Canvas(width, height);
+        sprites = new Image[COLORS.length];
+        for(int i = 0; i < COLORS.length; i++){
+            sprites[i] = renderCircle(COLORS[i], NODE_RADIUS * MAX_NODE_ZOOM);
+        }
+        agentSprite = renderCircle(Color.LIMEGREEN, AGENT_RADIUS * MAX_NODE_ZOOM);
+
+        Label log = new Label();
+        log.setTranslateX(WINDOWWIDTH - 210);
+        log.setTranslateY(GRAPHOFFSETY);
+        log.setFont(Font.font("News Gothic Standard", 14));
+        log.setText(player == null ? "Base Station Log" : "Replay");
+
+        pane.getChildren().addAll(edgeLayer, nodeLayer, log);
+        listenToMouse();
+        if(player != null){
+            player.setListener(this::markDirty);
+        }
+        else{
+            graph.setChangeListener(this::markDirty);
+        }
+    }
+
+    /**
+     * Remembers that a Sensor changed, from whichever thread changed it
+     * @param id id of the Sensor
+     */
+    private void markDirty(int id){
+        long bit = 1L << id;
+        if((dirty.getAndAccumulate(id >>> 6, bit, (word, mask) -> word | mask) & bit) == 0){
+            dirtyCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Draws a circle once so that it can be copied for every Sensor
+     * @param color fill of the circle
+     * @param radius radius in pixels at the largest zoom
+     * @return Image of the circle on a transparent background
+     */
+    private static Image renderCircle(Color color, double radius){
+        Canvas canvas = new Canvas(2 * radius, 2 * radius);
+        GraphicsContext gc = canvas.getGraphicsContext2D();
+        gc.setFill(color);
+        gc.fillOval(0, 0, 2 * radius, 2 * radius);
+        SnapshotParameters parameters = new SnapshotParameters();
+        parameters.setFill(Color.TRANSPARENT);
+        return canvas.snapshot(parameters, null);
+    }
+
+    /**
+     * Zooms with the mouse wheel around the pointer and pans when dragging with the primary button
+     */
+    private void listenToMouse(){
+        nodeLayer.setOnScroll(event -> {
+            double factor = event.getDeltaY() > 0 ? ZOOM_STEP : 1 / ZOOM_STEP;
+            //keep the point under the pointer where it is
+            translateX = event.getX() - (event.getX() - translateX) * factor;
+            translateY = event.getY() - (event.getY() - translateY) * factor;
+            scale *= factor;
+            viewChanged = true;
+        });
+        nodeLayer.setOnMousePressed(event -> {
+            if(event.getButton() == MouseButton.PRIMARY){
+                dragX = event.getX();
+                dragY = event.getY();
+            }
+        });
+        nodeLayer.setOnMouseDragged(event -> {
+            if(event.getButton() == MouseButton.PRIMARY){
+                translateX += event.getX() - dragX;
+                translateY += event.getY() - dragY;
+                dragX = event.getX();
+                dragY = event.getY();
+                viewChanged = true;
+            }
+        });
+    }
+
+    /**
+     * Called in the animation timer every frame. Draws the edges and every Sensor again if the view moved, otherwise
+     * only the Sensors that changed, or all of them if many did
+     */
+    @Override
+    public void displayGraph(){
+        if(player != null){
+            player.play();
+        }
+        int changed = dirtyCount.getAndSet(0);
+        if(viewChanged){
+            viewChanged = false;
+            clearDirty();
+            project();
+            drawEdges();
+            drawSensors();
+        }
+        else if(changed * (nearbyPerSensor + 1) > visibleCount){
+            //drawing a box per changed Sensor would draw more than the whole layer
+            clearDirty();
+            drawSensors();
+        }
+        else if(changed > 0){
+            drawChangedSensors();
+        }
+
+        if(player != null){
+            if(replayLabel == null){
+                replayLabel = new Label();
+                replayLabel.setTranslateX(WINDOWWIDTH - 210);
+                replayLabel.setTranslateY(GRAPHOFFSETY + 20);
+                replayLabel.setFont(Font.font("News Gothic Standard", 9));
+                pane.getChildren().add(replayLabel);
+            }
+            replayLabel.setText(Display.describeReplay(player));
+            return;
+        }
+        Sensor station = graph.getBaseStation();
+        if(station instanceof BaseStation){
+            displayLog((BaseStation) station);
+        }
+    }
+
+    /**
+     * Returns the point of the graph under a point of the screen, in the current view
+     * @param x x on the Canvas
+     * @param y y on the Canvas
+     * @return Point2D in graph coordinates
+     */
+    public Point2D toGraph(double x, double y){
+        return new Point2D((x - translateX) / scale, (y - translateY) / scale);
+    }
+
+    /**
+     * Works out the screen position of every Sensor for the current view, and the grid of the screen the visible
+     * ones fall in
+     */
+    private void project(){
+        for(int id = 0; id < xs.length; id++){
+            screenX[id] = xs[id] * scale + translateX;
+            screenY[id] = ys[id] * scale + translateY;
+        }
+
+        //the farthest a Sensor draws from its center, and cells large enough that the Sensors reaching into the box
+        //cleared around a Sensor are all in the cells next to its own
+        reach = Math.max(AGENT_RADIUS * Math.min(scale / fitScale, MAX_NODE_ZOOM), 1);
+        cellSize = 2 * reach + 1;
+        gridColumns = (int) ((nodeLayer.getWidth() + 2 * reach) / cellSize) + 1;
+        gridRows = (int) ((nodeLayer.getHeight() + 2 * reach) / cellSize) + 1;
+        int cells = gridColumns * gridRows;
+        if(cellStarts.length < cells + 1){
+            cellStarts = new int[cells + 1];
+        }
+        else{
+            Arrays.fill(cellStarts, 0, cells + 1, 0);
+        }
+        //counting sort of the visible Sensors by cell
+        for(int id = 0; id < xs.length; id++){
+            int cell = cellOf(id);
+            if(cell >= 0){
+                cellStarts[cell + 1]++;
+            }
+        }
+        long crowding = 0;
+        for(int cell = 0; cell < cells; cell++){
+            crowding += (long) cellStarts[cell + 1] * cellStarts[cell + 1];
+            cellStarts[cell + 1] += cellStarts[cell];
+        }
+        visibleCount = cellStarts[cells];
+        //a Sensor shares its cell with crowding / visibleCount Sensors on average, and the box takes in nine cells
+        nearbyPerSensor = visibleCount == 0 ? 0 : 9.0 * crowding / visibleCount;
+        for(int id = 0; id < xs.length; id++){
+            int cell = cellOf(id);
+            if(cell >= 0){
+                cellIds[cellStarts[cell]++] = id;
+            }
+        }
+        //each start was moved up to the start of the next cell while filling in
+        for(int cell = cells; cell > 0; cell--){
+            cellStarts[cell] = cellStarts[cell - 1];
+        }
+        cellStarts[0] = 0;
+    }
+
+    /**
+     * Finds the cell of the grid a Sensor is in
+     * @param id id of the Sensor
+     * @return int cell, -1 if the Sensor is out of the view
+     */
+    private int cellOf(int id){
+        double x = screenX[id] + reach, y = screenY[id] + reach;
+        if(x < 0 || y < 0){
+            return -1;
+        }
+        int column = (int) (x / cellSize), row = (int) (y / cellSize);
+        if(column >= gridColumns || row >= gridRows){
+            return -1;
+        }
+        return row * gridColumns + column;
+    }
+
+    /**
+     * Strokes every visible edge as a single path
+     */
+    private void drawEdges(){
+        GraphicsContext gc = edgeLayer.getGraphicsContext2D();
+        double width = edgeLayer.getWidth();
+        double height = edgeLayer.getHeight();
+        gc.clearRect(0, 0, width, height);
+        gc.setStroke(Color.BLACK);
+        gc.setLineWidth(1);
+        gc.beginPath();
+        for(int i = 0; i < edges.length; i += 2){
+            double x1 = screenX[edges[i]], y1 = screenY[edges[i]];
+            double x2 = screenX[edges[i + 1]], y2 = screenY[edges[i + 1]];
+            //both ends on the same side of the view, the edge cannot cross it
+            if((x1 < 0 && x2 < 0) || (x1 > width && x2 > width) || (y1 < 0 && y2 < 0) || (y1 > height && y2 > height)){
+                continue;
+            }
+            //shorter than a pixel, hidden under its Sensors
+            if(Math.abs(x1 - x2) < 1 && Math.abs(y1 - y2) < 1){
+                continue;
+            }
+            gc.moveTo(x1, y1);
+            gc.lineTo(x2, y2);
+        }
+        gc.stroke();
+    }
+
+    /**
+     * Draws every visible Sensor and the mark of every Agent, as circles or, when zoomed far out, as pixels
+     */
+    private void drawSensors(){
+        GraphicsContext gc = nodeLayer.getGraphicsContext2D();
+        double width = nodeLayer.getWidth();
+        double height = nodeLayer.getHeight();
+        gc.clearRect(0, 0, width, height);
+
+        double zoom = Math.min(scale / fitScale, MAX_NODE_ZOOM);
+        double radius = NODE_RADIUS * zoom;
+        double agentRadius = AGENT_RADIUS * zoom;
+
+        int size = xs.length;
+        for(int id = 0; id < size; id++){
+            double x = screenX[id], y = screenY[id];
+            if(x < -agentRadius || x > width + agentRadius || y < -agentRadius || y > height + agentRadius){
+                colors[id] = -1;
+                continue;
+            }
+            colors[id] = (byte) colorIndex(id);
+            drawAgent(gc, id, agentRadius);
+        }
+
+        if(radius < 1){
+            //one pass per color, so the fill only changes four times
+            for(int c = 0; c < COLORS.length; c++){
+                gc.setFill(COLORS[c]);
+                for(int id = 0; id < size; id++){
+                    if(colors[id] == c){
+                        gc.fillRect(screenX[id], screenY[id], 1, 1);
+                    }
+                }
+            }
+        }
+        else{
+            for(int id = 0; id < size; id++){
+                if(colors[id] >= 0){
+                    gc.drawImage(sprites[colors[id]], screenX[id] - radius, screenY[id] - radius, 2 * radius, 2 * radius);
+                }
+            }
+        }
+    }
+
+    /**
+     * Draws again only the Sensors that changed since the last frame. The pixel aligned box a Sensor can draw into
+     * is cleared and every Sensor reaching into it is drawn again, clipped to the box and in the order drawSensors()
+     * uses, so the box ends up as if the whole layer had been drawn
+     */
+    private void drawChangedSensors(){
+        GraphicsContext gc = nodeLayer.getGraphicsContext2D();
+        double zoom = Math.min(scale / fitScale, MAX_NODE_ZOOM);
+        double radius = NODE_RADIUS * zoom;
+        double agentRadius = AGENT_RADIUS * zoom;
+
+        for(int word = 0; word < dirty.length(); word++){
+            long bits = dirty.getAndSet(word, 0);
+            while(bits != 0){
+                int id = (word << 6) + Long.numberOfTrailingZeros(bits);
+                bits &= bits - 1;
+                int cell = cellOf(id);
+                if(cell < 0){
+                    continue;
+                }
+                double left = Math.floor(screenX[id] - reach), top = Math.floor(screenY[id] - reach);
+                double right = Math.ceil(screenX[id] + reach), bottom = Math.ceil(screenY[id] + reach);
+
+                int count = 0;
+                int column = cell % gridColumns, row = cell / gridColumns;
+                for(int r = Math.max(0, row - 1); r <= Math.min(gridRows - 1, row + 1); r++){
+                    for(int c = Math.max(0, column - 1); c <= Math.min(gridColumns - 1, column + 1); c++){
+                        int other = r * gridColumns + c;
+                        for(int i = cellStarts[other]; i < cellStarts[other + 1]; i++){
+                            if(count == nearby.length){
+                                nearby = Arrays.copyOf(nearby, count * 2);
+                            }
+                            nearby[count++] = cellIds[i];
+                        }
+                    }
+                }
+                Arrays.sort(nearby, 0, count);
+
+                gc.save();
+                gc.beginPath();
+                gc.rect(left, top, right - left, bottom - top);
+                gc.clip();
+                gc.clearRect(left, top, right - left, bottom - top);
+                for(int i = 0; i < count; i++){
+                    colors[nearby[i]] = (byte) colorIndex(nearby[i]);
+                    drawAgent(gc, nearby[i], agentRadius);
+                }
+                if(radius < 1){
+                    for(int c = 0; c < COLORS.length; c++){
+                        gc.setFill(COLORS[c]);
+                        for(int i = 0; i < count; i++){
+                            if(colors[nearby[i]] == c){
+                                gc.fillRect(screenX[nearby[i]], screenY[nearby[i]], 1, 1);
+                            }
+                        }
+                    }
+                }
+                else{
+                    for(int i = 0; i < count; i++){
+                        int other = nearby[i];
+                        gc.drawImage(sprites[colors[other]], screenX[other] - radius, screenY[other] - radius,
+                                2 * radius, 2 * radius);
+                    }
+                }
+                gc.restore();
+            }
+        }
+    }
+
+    /**
+     * Draws the mark of the Agent on a Sensor, if there is one
+     * @param gc where to draw
+     * @param id id of the Sensor
+     * @param agentRadius radius of the mark in the current view
+     */
+    private void drawAgent(GraphicsContext gc, int id, double agentRadius){
+        if(player == null ? graph.getSensorById(id).agentPresent() : player.hasAgent(id)){
+            double x = screenX[id], y = screenY[id];
+            if(agentRadius < 1){
+                gc.setFill(Color.LIMEGREEN);
+                gc.fillRect(x, y, 1, 1);
+            }
+            else{
+                gc.drawImage(agentSprite, x - agentRadius, y - agentRadius, 2 * agentRadius, 2 * agentRadius);
+            }
+        }
+    }
+
+    /**
+     * Forgets which Sensors changed, when all of them are drawn anyway
+     */
+    private void clearDirty(){
+        for(int word = 0; word < dirty.length(); word++){
+            dirty.set(word, 0);
+        }
+    }
+
+    /**
+     * Adds the lines of the base station log that are not on the screen yet
+     * @param station
+     */
+    private void displayLog(BaseStation station){
+        if(logCursor == null){
+            logCursor = station.getEventLog().cursor();
+        }
+        while(logCursor.hasNext()){
+            Label line = new Label();
+            line.setTranslateX(WINDOWWIDTH - 210);
+            line.setTranslateY(GRAPHOFFSETY + logLines * 10 + 20);
+            line.setFont(Font.font("News Gothic Standard", 9));
+            line.setText(station.describe(logCursor.next()));
+            pane.getChildren().add(line);
+            logLines++;
+        }
+    }
+
+    /**
+     * Finds the color a Sensor is drawn in, from the live run or the player
+     * @param id id of the Sensor
+     * @return int index into COLORS
+     */
+    private int colorIndex(int id){
+        Sensor sensor = graph.getSensorById(id);
+        Status status = player == null ? sensor.getStatus() : player.getStatus(id);
+        Color color = Display.colorOf(status, sensor instanceof BaseStation);
+        for(int i = 0; i < COLORS.length; i++){
+            if(COLORS[i].equals(color)){
+                return i;
+            }
+        }
+        return 0;
+    }
+}
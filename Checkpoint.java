@@ -0,0 +1,779 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The whole state of a run on the discrete event Scheduler, taken between two events, from which the run can carry on
+ * exactly as if it had never stopped.
+ *
+ * That is the status, Mailbox, relayed messages, sequence numbers, route and Agent of every Sensor, every Agent alive
+ * or waiting in the AgentPool with its Sensors, queue, children counter and flags, the pending events with the Sensor
+ * or Agent they belong to, the clock, counters and random generator of the Scheduler, and the Base Station log.
+ *
+ * Taking a checkpoint only copies that state into arrays, one per field, and keeps references to the immutable
+ * Messages, so the run stops for as little as possible. Writing it out happens afterwards, on any thread: the arrays
+ * go to the file one after the other, column by column, through gzip, which compresses columns of similar values far
+ * better than one record per Sensor would. The Base Station log is append-only, so only its length is copied when
+ * the checkpoint is taken and its Messages are read when it is written.
+ *
+ * The population of Agents over time, the Mailbox counters, the Metrics and the Trace of a run are not part of a
+ * checkpoint.
+ */
+public class Checkpoint {
+
+    private static final int MAGIC = 0x43484B32;
+
+    //kinds of pending event
+    private static final byte SENSOR_STEP = 0;
+    private static final byte SENSOR_TIMER = 1;
+    private static final byte AGENT_STEP = 2;
+    private static final byte AGENT_TIMER = 3;
+    //walk timer set in an earlier life of a recycled Agent, which does nothing when it goes off
+    private static final byte AGENT_STALE_TIMER = 4;
+
+    private static final Message.Type[] TYPES = Message.Type.values();
+    private static final Status[] STATUSES = Status.values();
+
+    //the run
+    private long seed;
+    private long now, nextOrder, eventsRun, walkSteps;
+    private int agentsStarted, clonesStarted;
+    private byte[] random;
+    private int cloning, walk;
+    private int cap, peak, created, reused, rejected;
+
+    //a column per field of the Sensors
+    private int sensors;
+    private byte[] status;
+    private byte[] sensorFlags;
+    private int[] sequence;
+    private int[] routeParent;
+    private long[] lastVisited;
+    private int[] sensorAgent;
+    private int[] mailCount;
+    private List<Message> mail;
+    //capacity of the DedupCache of each Sensor, 0 for none, and the keys of all of them in a row
+    private int[] relayedCapacity;
+    private int[] relayedCount;
+    private long[] relayedKeys;
+
+    //a column per field of the Agents
+    private int agents;
+    private String[] agentId;
+    private int[] createLocation;
+    private int[] current;
+    private int[] previous;
+    private int[] children;
+    private int[] searchGroup;
+    private byte[] agentFlags;
+    private byte[] pooled;
+    private int[] queueCount;
+    private byte[] queueTypes;
+    private boolean[] searchFound;
+    private int[] free;
+
+    //pending events in the order they will run
+    private int events;
+    private long[] eventTime;
+    private long[] eventOrder;
+    private byte[] eventKind;
+    private int[] eventOwner;
+
+    //the Base Station log, read from the EventLog when written, or as read from a file
+    private EventLog log;
+    private long logCount;
+    private List<Message> logMessages;
+
+    private final Stats stats = new Stats();
+
+    private Checkpoint(){
+
+    }
+
+    /**
+     * Copies the state of a run. Has to be called between two events, on the thread running them
+     * @param graph Graph of the run
+     * @param scheduler discrete event Scheduler of the run
+     * @param seed seed the run was started with, kept for the Result of the restored run
+     * @return Checkpoint of the run
+     */
+    public static Checkpoint capture(Graph graph, Scheduler scheduler, long seed){
+        if(!scheduler.isVirtualTime()){
+            throw new IllegalStateException("Only runs on the discrete event Scheduler can be checkpointed");
+        }
+        long start = System.nanoTime();
+        Checkpoint checkpoint = new Checkpoint();
+        checkpoint.copy(graph, scheduler, seed);
+        checkpoint.stats.virtualMillis = TimeUnit.NANOSECONDS.toMillis(checkpoint.now);
+        checkpoint.stats.sensors = checkpoint.sensors;
+        checkpoint.stats.agents = checkpoint.agents;
+        checkpoint.stats.events = checkpoint.events;
+        checkpoint.stats.pauseNanos = System.nanoTime() - start;
+        return checkpoint;
+    }
+
+    private void copy(Graph graph, Scheduler scheduler, long seed){
+        this.seed = seed;
+        now = scheduler.now();
+        nextOrder = scheduler.getNextOrder();
+        eventsRun = scheduler.getEventsRun();
+        walkSteps = scheduler.getWalkSteps();
+        agentsStarted = scheduler.getAgentsStarted();
+        clonesStarted = scheduler.getClonesStarted();
+        random = serialize(scheduler.random());
+        cloning = scheduler.getCloningStrategy().ordinal();
+        walk = scheduler.getWalkStrategy().ordinal();
+        AgentPool pool = scheduler.getAgentPool();
+        cap = pool.getCap();
+        peak = pool.getPeak();
+        created = pool.getCreated();
+        reused = pool.getReused();
+        rejected = pool.getRejected();
+
+        //every Agent gets an index: the ones on Sensors, then the free ones, then any other owner of an event
+        Map<Agent, Integer> agentIndex = new IdentityHashMap<>();
+        List<Agent> agentList = new ArrayList<>();
+        sensors = graph.getSizeOfGraph();
+        for(int id = 0; id < sensors; id++){
+            index(graph.getSensorById(id).getAgent(), agentIndex, agentList);
+        }
+        Agent[] freeAgents = pool.getFree();
+        for(Agent agent: freeAgents){
+            index(agent, agentIndex, agentList);
+        }
+        List<Scheduler.Event> pending = scheduler.getPendingEvents();
+        for(Scheduler.Event event: pending){
+            if(event.getOwner() instanceof Agent){
+                index((Agent) event.getOwner(), agentIndex, agentList);
+            }
+        }
+
+        status = new byte[sensors];
+        sensorFlags = new byte[sensors];
+        sequence = new int[sensors];
+        routeParent = new int[sensors];
+        lastVisited = new long[sensors];
+        sensorAgent = new int[sensors];
+        mailCount = new int[sensors];
+        mail = new ArrayList<>();
+        relayedCapacity = new int[sensors];
+        relayedCount = new int[sensors];
+        LongColumn keys = new LongColumn();
+        for(int id = 0; id < sensors; id++){
+            Sensor sensor = graph.getSensorById(id);
+            status[id] = (byte) sensor.getStatus().ordinal();
+            sensorFlags[id] = (byte) sensor.getActorFlags();
+            sequence[id] = sensor.getSequence();
+            routeParent[id] = sensor.getRouteParent();
+            lastVisited[id] = sensor.getLastVisited();
+            Agent agent = sensor.getAgent();
+            sensorAgent[id] = agent == null ? -1 : agentIndex.get(agent);
+            List<Message> waiting = sensor.getQ().contents();
+            mailCount[id] = waiting.size();
+            mail.addAll(waiting);
+            DedupCache relayed = sensor.getRelayed();
+            if(relayed != null){
+                long[] sensorKeys = relayed.keys();
+                relayedCapacity[id] = relayed.capacity();
+                relayedCount[id] = sensorKeys.length;
+                keys.addAll(sensorKeys);
+            }
+        }
+        relayedKeys = keys.toArray();
+
+        agents = agentList.size();
+        agentId = new String[agents];
+        createLocation = new int[agents];
+        current = new int[agents];
+        previous = new int[agents];
+        children = new int[agents];
+        searchGroup = new int[agents];
+        agentFlags = new byte[agents];
+        pooled = new byte[agents];
+        queueCount = new int[agents];
+        ByteColumn types = new ByteColumn();
+        Map<AtomicBoolean, Integer> groups = new IdentityHashMap<>();
+        List<Boolean> found = new ArrayList<>();
+        for(int i = 0; i < agents; i++){
+            Agent agent = agentList.get(i);
+            agentId[i] = agent.getAgentId();
+            createLocation[i] = idOf(agent.getCreateLocation());
+            current[i] = idOf(agent.getCurrent());
+            previous[i] = idOf(agent.getPrevious());
+            children[i] = agent.getChildren();
+            agentFlags[i] = (byte) agent.getActorFlags();
+            pooled[i] = (byte) (agent.isPooled() ? 1 : 0);
+            AtomicBoolean search = agent.getSearch();
+            if(search == null){
+                searchGroup[i] = -1;
+            }
+            else{
+                Integer group = groups.get(search);
+                if(group == null){
+                    group = found.size();
+                    groups.put(search, group);
+                    found.add(search.get());
+                }
+                searchGroup[i] = group;
+            }
+            List<Message.Type> queued = agent.getQueue().contents();
+            queueCount[i] = queued.size();
+            for(Message.Type type: queued){
+                types.add((byte) type.ordinal());
+            }
+        }
+        queueTypes = types.toArray();
+        searchFound = new boolean[found.size()];
+        for(int i = 0; i < searchFound.length; i++){
+            searchFound[i] = found.get(i);
+        }
+        free = new int[freeAgents.length];
+        for(int i = 0; i < freeAgents.length; i++){
+            free[i] = agentIndex.get(freeAgents[i]);
+        }
+
+        events = pending.size();
+        eventTime = new long[events];
+        eventOrder = new long[events];
+        eventKind = new byte[events];
+        eventOwner = new int[events];
+        for(int i = 0; i < events; i++){
+            Scheduler.Event event = pending.get(i);
+            eventTime[i] = event.getTime();
+            eventOrder[i] = event.getOrder();
+            Object owner = event.getOwner();
+            if(owner instanceof Sensor){
+                eventKind[i] = event.isTimer() ? SENSOR_TIMER : SENSOR_STEP;
+                eventOwner[i] = ((Sensor) owner).getId();
+            }
+            else if(owner instanceof Agent){
+                Agent agent = (Agent) owner;
+                eventKind[i] = !event.isTimer() ? AGENT_STEP :
+                        agent.isStale(event.getTask()) ? AGENT_STALE_TIMER : AGENT_TIMER;
+                eventOwner[i] = agentIndex.get(owner);
+            }
+            else{
+                throw new IllegalStateException("An event belongs to neither a Sensor nor an Agent");
+            }
+        }
+
+        Sensor station = graph.getBaseStation();
+        if(station instanceof BaseStation){
+            log = ((BaseStation) station).getEventLog();
+            logCount = log.size();
+        }
+    }
+
+    /**
+     * Puts a run back in the state of this checkpoint, pending events included. Running the Scheduler afterwards
+     * carries on with the run
+     * @param graph fresh Graph with the topology the checkpoint was taken on, its Sensors not started
+     * @param scheduler new discrete event Scheduler for the run, nothing started on it yet
+     */
+    public void restore(Graph graph, Scheduler scheduler){
+        if(graph.getSizeOfGraph() != sensors){
+            throw new IllegalArgumentException("The checkpoint has " + sensors + " Sensors, the Graph " +
+                    graph.getSizeOfGraph());
+        }
+        scheduler.setCloningStrategy(CloningStrategy.values()[cloning]);
+        scheduler.setWalkStrategy(WalkStrategy.values()[walk]);
+        scheduler.setAgentCap(cap);
+
+        Agent[] agentObjects = new Agent[agents];
+        for(int i = 0; i < agents; i++){
+            agentObjects[i] = new Agent(agentId[i], sensorOf(graph, createLocation[i]), (agentFlags[i] & 1) != 0);
+        }
+        AtomicBoolean[] searches = new AtomicBoolean[searchFound.length];
+        for(int i = 0; i < searches.length; i++){
+            searches[i] = new AtomicBoolean(searchFound[i]);
+        }
+
+        int mailAt = 0;
+        int keyAt = 0;
+        for(int id = 0; id < sensors; id++){
+            DedupCache relayed = null;
+            if(relayedCapacity[id] > 0){
+                relayed = new DedupCache(relayedCapacity[id]);
+                for(int k = 0; k < relayedCount[id]; k++){
+                    long key = relayedKeys[keyAt++];
+                    relayed.add((int) (key >>> 32), (int) key);
+                }
+            }
+            List<Message> waiting = mail.subList(mailAt, mailAt + mailCount[id]);
+            mailAt += mailCount[id];
+            graph.getSensorById(id).restore(scheduler, STATUSES[status[id]], sequence[id], routeParent[id],
+                    lastVisited[id], relayed, waiting, sensorAgent[id] < 0 ? null : agentObjects[sensorAgent[id]],
+                    sensorFlags[id]);
+        }
+
+        AgentPool pool = scheduler.getAgentPool();
+        int typeAt = 0;
+        for(int i = 0; i < agents; i++){
+            List<Message.Type> queued = new ArrayList<>(queueCount[i]);
+            for(int k = 0; k < queueCount[i]; k++){
+                queued.add(TYPES[queueTypes[typeAt++]]);
+            }
+            agentObjects[i].restore(scheduler, sensorOf(graph, current[i]), sensorOf(graph, previous[i]), children[i],
+                    searchGroup[i] < 0 ? null : searches[searchGroup[i]], queued, pooled[i] != 0, agentFlags[i]);
+            if(pooled[i] != 0){
+                pool.restoreLive();
+            }
+        }
+        List<Agent> freeAgents = new ArrayList<>(free.length);
+        for(int index: free){
+            freeAgents.add(agentObjects[index]);
+        }
+        pool.restore(freeAgents, peak, created, reused, rejected);
+
+        scheduler.restoreClock(now, nextOrder, eventsRun, (Random) deserialize(random), walkSteps, agentsStarted,
+                clonesStarted);
+        for(int i = 0; i < events; i++){
+            boolean timer = eventKind[i] == SENSOR_TIMER || eventKind[i] == AGENT_TIMER ||
+                    eventKind[i] == AGENT_STALE_TIMER;
+            Object owner;
+            Runnable task;
+            if(eventKind[i] == SENSOR_STEP || eventKind[i] == SENSOR_TIMER){
+                Sensor sensor = graph.getSensorById(eventOwner[i]);
+                owner = sensor;
+                task = sensor.task(timer);
+            }
+            else{
+                Agent agent = agentObjects[eventOwner[i]];
+                owner = agent;
+                task = eventKind[i] == AGENT_STALE_TIMER ? agent.staleTimer() : agent.task(timer);
+            }
+            scheduler.restoreEvent(eventTime[i], eventOrder[i], task, owner, timer);
+        }
+
+        Sensor station = graph.getBaseStation();
+        if(station instanceof BaseStation){
+            BaseStation baseStation = (BaseStation) station;
+            for(Message message: logMessages()){
+                baseStation.addLog(message);
+            }
+        }
+    }
+
+    /**
+     * Writes the checkpoint to a file, replacing the file only once it is complete. Can be called from any thread
+     * once the checkpoint is taken, the run carries on meanwhile
+     * @param file file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(File file) throws IOException {
+        long start = System.nanoTime();
+        File partial = new File(file.getPath() + ".tmp");
+        long raw;
+        try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(
+                new GZIPOutputStream(new FileOutputStream(partial), 1 << 16)))){
+            out.writeInt(MAGIC);
+            out.writeLong(seed);
+            out.writeLong(now);
+            out.writeLong(nextOrder);
+            out.writeLong(eventsRun);
+            out.writeLong(walkSteps);
+            out.writeInt(agentsStarted);
+            out.writeInt(clonesStarted);
+            writeBytes(out, random);
+            out.writeInt(cloning);
+            out.writeInt(walk);
+            out.writeInt(cap);
+            out.writeInt(peak);
+            out.writeInt(created);
+            out.writeInt(reused);
+            out.writeInt(rejected);
+
+            out.writeInt(sensors);
+            out.write(status);
+            out.write(sensorFlags);
+            writeInts(out, sequence);
+            writeInts(out, routeParent);
+            writeLongs(out, lastVisited);
+            writeInts(out, sensorAgent);
+            writeInts(out, mailCount);
+            writeMessages(out, mail);
+            writeInts(out, relayedCapacity);
+            writeInts(out, relayedCount);
+            out.writeInt(relayedKeys.length);
+            writeLongs(out, relayedKeys);
+
+            out.writeInt(agents);
+            for(String id: agentId){
+                out.writeUTF(id);
+            }
+            writeInts(out, createLocation);
+            writeInts(out, current);
+            writeInts(out, previous);
+            writeInts(out, children);
+            writeInts(out, searchGroup);
+            out.write(agentFlags);
+            out.write(pooled);
+            writeInts(out, queueCount);
+            writeBytes(out, queueTypes);
+            out.writeInt(searchFound.length);
+            for(boolean found: searchFound){
+                out.writeBoolean(found);
+            }
+            out.writeInt(free.length);
+            writeInts(out, free);
+
+            out.writeInt(events);
+            writeLongs(out, eventTime);
+            writeLongs(out, eventOrder);
+            out.write(eventKind);
+            writeInts(out, eventOwner);
+
+            writeMessages(out, logMessages());
+            raw = out.size();
+        }
+        Files.move(partial.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+        stats.rawBytes = raw;
+        stats.fileBytes = file.length();
+        stats.writeNanos = System.nanoTime() - start;
+    }
+
+    /**
+     * Reads a checkpoint written by write()
+     * @param file file to read
+     * @return Checkpoint ready to be restored
+     * @throws IOException if the file cannot be read or is not a checkpoint
+     */
+    public static Checkpoint read(File file) throws IOException {
+        Checkpoint checkpoint = new Checkpoint();
+        try(DataInputStream in = new DataInputStream(new BufferedInputStream(
+                new GZIPInputStream(new FileInputStream(file), 1 << 16)))){
+            if(in.readInt() != MAGIC){
+                throw new IOException("Not a checkpoint file: " + file);
+            }
+            checkpoint.readFrom(in);
+        }
+        checkpoint.stats.virtualMillis = TimeUnit.NANOSECONDS.toMillis(checkpoint.now);
+        checkpoint.stats.sensors = checkpoint.sensors;
+        checkpoint.stats.agents = checkpoint.agents;
+        checkpoint.stats.events = checkpoint.events;
+        checkpoint.stats.fileBytes = file.length();
+        return checkpoint;
+    }
+
+    private void readFrom(DataInputStream in) throws IOException {
+        seed = in.readLong();
+        now = in.readLong();
+        nextOrder = in.readLong();
+        eventsRun = in.readLong();
+        walkSteps = in.readLong();
+        agentsStarted = in.readInt();
+        clonesStarted = in.readInt();
+        random = readBytes(in);
+        cloning = in.readInt();
+        walk = in.readInt();
+        cap = in.readInt();
+        peak = in.readInt();
+        created = in.readInt();
+        reused = in.readInt();
+        rejected = in.readInt();
+
+        sensors = in.readInt();
+        status = new byte[sensors];
+        in.readFully(status);
+        sensorFlags = new byte[sensors];
+        in.readFully(sensorFlags);
+        sequence = readInts(in, sensors);
+        routeParent = readInts(in, sensors);
+        lastVisited = readLongs(in, sensors);
+        sensorAgent = readInts(in, sensors);
+        mailCount = readInts(in, sensors);
+        mail = readMessages(in);
+        relayedCapacity = readInts(in, sensors);
+        relayedCount = readInts(in, sensors);
+        relayedKeys = readLongs(in, in.readInt());
+
+        agents = in.readInt();
+        agentId = new String[agents];
+        for(int i = 0; i < agents; i++){
+            agentId[i] = in.readUTF();
+        }
+        createLocation = readInts(in, agents);
+        current = readInts(in, agents);
+        previous = readInts(in, agents);
+        children = readInts(in, agents);
+        searchGroup = readInts(in, agents);
+        agentFlags = new byte[agents];
+        in.readFully(agentFlags);
+        pooled = new byte[agents];
+        in.readFully(pooled);
+        queueCount = readInts(in, agents);
+        queueTypes = readBytes(in);
+        searchFound = new boolean[in.readInt()];
+        for(int i = 0; i < searchFound.length; i++){
+            searchFound[i] = in.readBoolean();
+        }
+        free = readInts(in, in.readInt());
+
+        events = in.readInt();
+        eventTime = readLongs(in, events);
+        eventOrder = readLongs(in, events);
+        eventKind = new byte[events];
+        in.readFully(eventKind);
+        eventOwner = readInts(in, events);
+
+        logMessages = readMessages(in);
+    }
+
+    /**
+     * Returns the seed the checkpointed run was started with
+     * @return long seed
+     */
+    public long getSeed(){
+        return this.seed;
+    }
+
+    /**
+     * Returns the virtual time the checkpoint was taken at
+     * @return long time in nanoseconds
+     */
+    public long getTime(){
+        return this.now;
+    }
+
+    /**
+     * Returns the measurements of this checkpoint, complete once it is written
+     * @return Stats of the checkpoint
+     */
+    public Stats getStats(){
+        return this.stats;
+    }
+
+    private List<Message> logMessages(){
+        if(logMessages != null){
+            return logMessages;
+        }
+        List<Message> messages = new ArrayList<>();
+        if(log != null){
+            EventLog.Cursor cursor = log.cursor();
+            while(messages.size() < logCount && cursor.hasNext()){
+                messages.add(cursor.next());
+            }
+        }
+        return messages;
+    }
+
+    private static void index(Agent agent, Map<Agent, Integer> agentIndex, List<Agent> agentList){
+        if(agent != null && !agentIndex.containsKey(agent)){
+            agentIndex.put(agent, agentList.size());
+            agentList.add(agent);
+        }
+    }
+
+    private static int idOf(Sensor sensor){
+        return sensor == null ? -1 : sensor.getId();
+    }
+
+    private static Sensor sensorOf(Graph graph, int id){
+        return id < 0 ? null : graph.getSensorById(id);
+    }
+
+    private static byte[] serialize(Object object){
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try(ObjectOutputStream out = new ObjectOutputStream(bytes)){
+            out.writeObject(object);
+        } catch(IOException io){
+            throw new IllegalStateException(io);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object deserialize(byte[] bytes){
+        try(ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))){
+            return in.readObject();
+        } catch(IOException | ClassNotFoundException e){
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void writeMessages(DataOutputStream out, List<Message> messages) throws IOException {
+        out.writeInt(messages.size());
+        for(Message message: messages){
+            out.writeByte(message.getType().ordinal());
+        }
+        for(Message message: messages){
+            out.writeInt(message.getSource());
+        }
+        for(Message message: messages){
+            out.writeInt(message.getSequence());
+        }
+        for(Message message: messages){
+            out.writeLong(message.getPayload());
+        }
+        for(Message message: messages){
+            String id = message.getAgentId();
+            out.writeBoolean(id != null);
+            if(id != null){
+                out.writeUTF(id);
+            }
+        }
+    }
+
+    private static List<Message> readMessages(DataInputStream in) throws IOException {
+        int count = in.readInt();
+        byte[] types = new byte[count];
+        in.readFully(types);
+        int[] sources = readInts(in, count);
+        int[] sequences = readInts(in, count);
+        long[] payloads = readLongs(in, count);
+        List<Message> messages = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            String id = in.readBoolean() ? in.readUTF() : null;
+            messages.add(Message.restore(TYPES[types[i]], sources[i], sequences[i], payloads[i], id));
+        }
+        return messages;
+    }
+
+    private static void writeBytes(DataOutputStream out, byte[] values) throws IOException {
+        out.writeInt(values.length);
+        out.write(values);
+    }
+
+    private static byte[] readBytes(DataInputStream in) throws IOException {
+        byte[] values = new byte[in.readInt()];
+        in.readFully(values);
+        return values;
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for(int value: values){
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in, int count) throws IOException {
+        int[] values = new int[count];
+        for(int i = 0; i < count; i++){
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    private static void writeLongs(DataOutputStream out, long[] values) throws IOException {
+        for(long value: values){
+            out.writeLong(value);
+        }
+    }
+
+    private static long[] readLongs(DataInputStream in, int count) throws IOException {
+        long[] values = new long[count];
+        for(int i = 0; i < count; i++){
+            values[i] = in.readLong();
+        }
+        return values;
+    }
+
+    /**
+     * Growable column of longs
+     */
+    private static class LongColumn {
+
+        private long[] values = new long[64];
+        private int size = 0;
+
+        void addAll(long[] more){
+            if(size + more.length > values.length){
+                values = java.util.Arrays.copyOf(values, Math.max(values.length * 2, size + more.length));
+            }
+            System.arraycopy(more, 0, values, size, more.length);
+            size += more.length;
+        }
+
+        long[] toArray(){
+            return java.util.Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Growable column of bytes
+     */
+    private static class ByteColumn {
+
+        private byte[] values = new byte[64];
+        private int size = 0;
+
+        void add(byte value){
+            if(size == values.length){
+                values = java.util.Arrays.copyOf(values, size * 2);
+            }
+            values[size++] = value;
+        }
+
+        byte[] toArray(){
+            return java.util.Arrays.copyOf(values, size);
+        }
+    }
+
+    /**
+     * Size and cost of a checkpoint
+     */
+    public static class Stats {
+
+        static final String HEADER = "virtualMillis,sensors,agents,events,pauseMicros,rawBytes,fileBytes,writeMillis";
+
+        private long virtualMillis;
+        private int sensors;
+        private int agents;
+        private int events;
+        private long pauseNanos;
+        private volatile long rawBytes;
+        private volatile long fileBytes;
+        private volatile long writeNanos;
+
+        /**
+         * Time the run was stopped for while the checkpoint was taken
+         * @return long pause in nanoseconds
+         */
+        public long getPauseNanos(){
+            return this.pauseNanos;
+        }
+
+        /**
+         * Size of the checkpoint before compression
+         * @return long bytes, 0 until it is written
+         */
+        public long getRawBytes(){
+            return this.rawBytes;
+        }
+
+        /**
+         * Size of the checkpoint file
+         * @return long bytes, 0 until it is written
+         */
+        public long getFileBytes(){
+            return this.fileBytes;
+        }
+
+        @Override
+        public String toString(){
+            return virtualMillis + "," + sensors + "," + agents + "," + events + "," +
+                    TimeUnit.NANOSECONDS.toMicros(pauseNanos) + "," + rawBytes + "," + fileBytes + "," +
+                    TimeUnit.NANOSECONDS.toMillis(writeNanos);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/**
+ * Decides which Sensors an Agent copies itself onto once it has found the fire.
+ *
+ * FLOOD is the original algorithm: an Agent on an alerted Sensor copies itself onto every neighbor that is not
+ * burning, so Agents end up on every Sensor within one hop of the alerted region.
+ *
+ * PERIMETER only keeps Agents on the perimeter of the fire, the alerted Sensors that still have a normal neighbor. A
+ * Sensor about to be alerted, one next to a burning Sensor, counts as alerted, since the alert is on its way. An
+ * Agent whose Sensor catches on fire hands over to the perimeter Sensors around it before leaving, and an Agent
+ * whose Sensor is alerted when it has no normal neighbor left retires, so the Agents follow the front as it moves.
+ *
+ * Either way a copy has to claim its Sensor with Sensor.tryClaim, so two Agents never end up on the same Sensor.
+ */
+public enum CloningStrategy {
+
+    FLOOD {
+        @Override
+        boolean isTarget(Sensor sensor){
+            return !sensor.getStatus().isAtLeast(Status.FIRE);
+        }
+
+        @Override
+        boolean keeps(Sensor sensor){
+            return true;
+        }
+
+        @Override
+        boolean handsOver(){
+            return false;
+        }
+    },
+
+    PERIMETER {
+        @Override
+        boolean isTarget(Sensor sensor){
+            Status status = sensor.getStatus();
+            if(status.isAtLeast(Status.FIRE)){
+                return false;
+            }
+            return (status == Status.ALERT || nextToFire(sensor)) && keeps(sensor);
+        }
+
+        @Override
+        boolean keeps(Sensor sensor){
+            for(Sensor neighbor: sensor.getNeighbors()){
+                if(neighbor.getStatus() == Status.NORMAL){
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        boolean handsOver(){
+            return true;
+        }
+    };
+
+    /**
+     * Checks if an Agent should be copied onto the given Sensor
+     * @param sensor neighbor of the alerted Sensor
+     * @return true if the Sensor should get a copy
+     */
+    abstract boolean isTarget(Sensor sensor);
+
+    /**
+     * Checks if an Agent on an alerted Sensor should stay there
+     * @param sensor Sensor the Agent is on
+     * @return true if the Agent stays, false if it retires
+     */
+    abstract boolean keeps(Sensor sensor);
+
+    /**
+     * Returns true if an Agent copies itself onto its neighbors once more when its own Sensor catches on fire
+     * @return boolean for whether Agents hand over before leaving
+     */
+    abstract boolean handsOver();
+
+    /**
+     * Finds the strategy with the given name, ignoring case
+     * @param name name of the strategy, flood or perimeter
+     * @return the CloningStrategy
+     */
+    public static CloningStrategy parse(String name){
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    private static boolean nextToFire(Sensor sensor){
+        for(Sensor neighbor: sensor.getNeighbors()){
+            if(neighbor.getStatus().isAtLeast(Status.FIRE)){
+                return true;
+            }
+        }
+        return false;
+    }
+}
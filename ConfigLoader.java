@@ -0,0 +1,173 @@
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Streaming loader for the configuration files. The file is read once, byte by byte, through a buffered stream and
+ * the integers are parsed straight from the bytes, so no String is created per line or per number.
+ *
+ * The node and edge records are collected into growable int arrays while reading, which means the station line can
+ * be anywhere in the file. Once the file has been read the sensors are created and the edges are resolved through the
+ * coordinate index of the Graph, so loading is linear in the size of the file.
+ */
+public class ConfigLoader {
+
+    private static final int BUFFER_SIZE = 1 << 16;
+
+    private IntList nodes = new IntList();
+    private IntList edges = new IntList();
+    private int[] baseStationNode = new int[2];
+    private int[] fireStart = new int[2];
+    private Agent agent;
+
+    //numbers parsed from the line currently being read
+    private int[] numbers = new int[4];
+    private int count;
+
+    /**
+     * Reads the given configuration file into the given Graph. The Sensors are added to the Graph and the edges
+     * between them are created
+     * @param fileName path of the configuration file
+     * @param graph empty Graph to fill
+     * @throws IOException if the file cannot be read
+     */
+    public void load(String fileName, Graph graph) throws IOException {
+        try(InputStream in = new BufferedInputStream(new FileInputStream(fileName), BUFFER_SIZE)){
+            read(in);
+        }
+        build(graph);
+    }
+
+    /**
+     * Goes through the stream once and records every line by the first character of its keyword
+     * @param in stream of the configuration file
+     * @throws IOException if the stream cannot be read
+     */
+    private void read(InputStream in) throws IOException {
+        int c = in.read();
+        while(c != -1){
+            //skip blank lines
+            while(c == '\n' || c == '\r'){
+                c = in.read();
+            }
+            if(c == -1){
+                break;
+            }
+            int type = c;
+            //skip the rest of the keyword
+            while(c != -1 && c != ' ' && c != '\t' && c != '\n'){
+                c = in.read();
+            }
+            c = readNumbers(in, c);
+
+            if(type == 'n' && count >= 2){
+                nodes.add(numbers[0]);
+                nodes.add(numbers[1]);
+            }
+            else if(type == 'e' && count >= 4){
+                for(int i = 0; i < 4; i++){
+                    edges.add(numbers[i]);
+                }
+            }
+            else if(type == 's' && count >= 2){
+                baseStationNode[0] = numbers[0];
+                baseStationNode[1] = numbers[1];
+            }
+            else if(type == 'f' && count >= 2){
+                fireStart[0] = numbers[0];
+                fireStart[1] = numbers[1];
+            }
+        }
+    }
+
+    /**
+     * Parses the integers on the rest of the current line into numbers
+     * @param in stream of the configuration file
+     * @param c the last character read
+     * @return the first character after the end of the line
+     * @throws IOException if the stream cannot be read
+     */
+    private int readNumbers(InputStream in, int c) throws IOException {
+        count = 0;
+        while(c != -1 && c != '\n'){
+            if(c == '-' || (c >= '0' && c <= '9')){
+                boolean negative = c == '-';
+                int value = negative ? 0 : c - '0';
+                c = in.read();
+                while(c >= '0' && c <= '9'){
+                    value = value * 10 + (c - '0');
+                    c = in.read();
+                }
+                if(count == numbers.length){
+                    numbers = Arrays.copyOf(numbers, count * 2);
+                }
+                numbers[count++] = negative ? -value : value;
+            }
+            else{
+                c = in.read();
+            }
+        }
+        return c;
+    }
+
+    /**
+     * Creates the Sensors and the edges that were read from the file
+     * @param graph Graph to put the Sensors in
+     */
+    private void build(Graph graph){
+        for(int i = 0; i < nodes.size(); i += 2){
+            int x = nodes.get(i);
+            int y = nodes.get(i + 1);
+
+            Sensor sensor;
+            if(x == baseStationNode[0] && y == baseStationNode[1]){
+                sensor = new BaseStation(x, y);
+                agent = new Agent("1", sensor, false);
+                sensor.agentMove(agent);
+            }
+            else{
+                sensor = new Sensor(x, y);
+            }
+            graph.addSensor(sensor);
+        }
+
+        for(int i = 0; i < edges.size(); i += 4){
+            Sensor sensor1 = graph.findSensor(edges.get(i), edges.get(i + 1));
+            Sensor sensor2 = graph.findSensor(edges.get(i + 2), edges.get(i + 3));
+            if(sensor1 == null || sensor2 == null){
+                Log.warn(-1, -1, "config.unknown_edge", "edge", edges.get(i) + "," + edges.get(i + 1) + "," +
+                        edges.get(i + 2) + "," + edges.get(i + 3));
+                continue;
+            }
+            graph.addEdge(sensor1, sensor2);
+        }
+        graph.freeze();
+    }
+
+    /**
+     * Retrieves the Agent placed on the Base Station
+     * @return the first Agent, or null if the file had no Base Station
+     */
+    public Agent getAgent(){
+        return this.agent;
+    }
+
+    /**
+     * Retrieves the coordinates of the Base Station
+     * @return int array of x and y
+     */
+    public int[] getBaseStationNode(){
+        return this.baseStationNode;
+    }
+
+    /**
+     * Retrieves the coordinates of the Sensor where the fire starts
+     * @return int array of x and y
+     */
+    public int[] getFireStart(){
+        return this.fireStart;
+    }
+
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * Remembers the most recent messages a Sensor has relayed so that a copy arriving a second time is not relayed again.
+ *
+ * A message is known by its origin Sensor id and the sequence number the origin gave it. The keys are kept in a ring
+ * of fixed capacity, and once the ring is full the oldest key is forgotten to make room for the new one. Alongside the
+ * ring there is an open addressing hash table of two to four times the capacity, so a lookup is O(1). The memory used
+ * by one cache is fixed when it is created: 8 bytes per remembered message in the ring plus 8 bytes per table slot,
+ * about 1.5KB for the default capacity of 64.
+ *
+ * The cache is exact over its window, so the false positive rate is 0: a message that was never seen is never
+ * reported as a duplicate. The price of the bounded memory is on the other side, a message that was forgotten is
+ * relayed again if a copy of it comes back. With messages routed along the tree to the base station copies are rare,
+ * and a Sensor only needs to remember as many messages as can be in flight around it at once.
+ *
+ * Not thread safe, each Sensor uses its own cache from the thread handling its Mailbox.
+ */
+public class DedupCache {
+
+    /**
+     * Number of messages remembered by each Sensor unless told otherwise
+     */
+    public static final int DEFAULT_CAPACITY = 64;
+
+    private static final long FREE = Long.MIN_VALUE;
+
+    //remembered keys in the order they were added, next is the slot to overwrite
+    private final long[] ring;
+    private int next = 0;
+    private int size = 0;
+
+    //hash set over the keys in the ring, linear probing, FREE marks an empty slot
+    private final long[] table;
+    private final int mask;
+
+    /**
+     * Creates an empty cache
+     * @param capacity number of messages to remember, at least 1
+     */
+    public DedupCache(int capacity){
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        ring = new long[capacity];
+        //the smallest power of two at least twice the capacity keeps the table at most half full
+        int slots = Integer.highestOneBit(capacity * 2 - 1) << 1;
+        table = new long[slots];
+        mask = slots - 1;
+        Arrays.fill(table, FREE);
+    }
+
+    /**
+     * Remembers a message unless it was seen already
+     * @param origin id of the Sensor the message started from
+     * @param sequence sequence number given by that Sensor
+     * @return true if the message was not in the cache, false if it is a duplicate
+     */
+    public boolean add(int origin, int sequence){
+        long key = key(origin, sequence);
+        int slot = find(key);
+        if(table[slot] == key){
+            return false;
+        }
+        if(size == ring.length){
+            remove(ring[next]);
+            //the slot found before may have moved
+            slot = find(key);
+        }
+        else{
+            size++;
+        }
+        table[slot] = key;
+        ring[next] = key;
+        next = (next + 1) % ring.length;
+        return true;
+    }
+
+    /**
+     * Checks if a message is in the cache without adding it
+     * @param origin id of the Sensor the message started from
+     * @param sequence sequence number given by that Sensor
+     * @return true if the message is remembered
+     */
+    public boolean contains(int origin, int sequence){
+        long key = key(origin, sequence);
+        return table[find(key)] == key;
+    }
+
+    /**
+     * Returns the number of messages remembered
+     * @return int number of keys in the cache
+     */
+    public int size(){
+        return this.size;
+    }
+
+    /**
+     * Returns the number of messages the cache can remember
+     * @return int capacity given when the cache was created
+     */
+    public int capacity(){
+        return ring.length;
+    }
+
+    /**
+     * Copies the remembered messages, oldest first, as origin in the high 32 bits and sequence in the low ones.
+     * Adding them in that order to an empty cache of the same capacity gives the same cache
+     * @return long[] of keys
+     */
+    long[] keys(){
+        long[] keys = new long[size];
+        int oldest = size == ring.length ? next : 0;
+        for(int i = 0; i < size; i++){
+            keys[i] = ring[(oldest + i) % ring.length];
+        }
+        return keys;
+    }
+
+    /**
+     * Finds the slot holding the key, or the free slot where it would go
+     */
+    private int find(long key){
+        int slot = mix(key) & mask;
+        while(table[slot] != FREE && table[slot] != key){
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    /**
+     * Takes a key out of the table, moving back the keys after it so that no probe sequence is broken
+     */
+    private void remove(long key){
+        int slot = find(key);
+        if(table[slot] == FREE){
+            return;
+        }
+        table[slot] = FREE;
+        int current = (slot + 1) & mask;
+        while(table[current] != FREE){
+            long moved = table[current];
+            int home = mix(moved) & mask;
+            //move the key into the hole if the hole lies between its home slot and where it is now
+            if(((current - home) & mask) >= ((current - slot) & mask)){
+                table[slot] = moved;
+                table[current] = FREE;
+                slot = current;
+            }
+            current = (current + 1) & mask;
+        }
+    }
+
+    private static long key(int origin, int sequence){
+        return ((long) origin << 32) | (sequence & 0xffffffffL);
+    }
+
+    private static int mix(long key){
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
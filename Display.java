@@ -7,35 +7,72 @@ import javafx.scene.shape.Line;
 import javafx.scene.text.Font;
 
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
-import java.util.Stack;
 
 /**
  * This Display class is used in order to draw the simulation onto the screen.
  * It is looped in an animation timer in the Graphics class
  * This class implements the GraphicsInterface which is a collection of constants used in the graphics calculations
+ *
+ * The scene is built once: a line for every edge, then a marker for the agent and a circle for every sensor, so the
+ * circles stay on top. The Graph tells the Display the id of every sensor whose status or agent changes, from
+ * whichever thread made the change, and each frame only those sensors are repainted. The base station log only gets
+ * a label for each line added since the last frame.
+ *
+ * Given a TracePlayer the Display plays a recorded run back instead: the player reports the sensors that change as
+ * its time moves, and the sensors are painted from its state rather than from the Graph.
  */
-public class Display implements GraphicsInterface{
+public class Display implements GraphicsInterface, DisplayBackend{
 
     private Pane pane;
     private Graph graph;
     private double multiplier;
     private double offsetX, offsetY;
 
+    //shapes of every sensor by id, created once
+    private Circle[] circles;
+    private Circle[] agents;
+
+    //ids of the sensors changed since the last frame, swapped with drawing at each frame
+    private final Object dirtyLock = new Object();
+    private BitSet dirty = new BitSet();
+    private BitSet drawing = new BitSet();
+
+    //reads the base station log from where the last frame stopped
+    private EventLog.Cursor logCursor = null;
+    //number of base station log lines on screen
+    private int logLines = 0;
+
+    //plays back a recorded run, null when showing the live run
+    private TracePlayer player;
+    private Label replayLabel = null;
+
     /**
      * This is the constructor for the Display class which takes a pane to draw onto and a Graph to draw
      * @param pane
      * @param graph
      */
     public Display(Pane pane, Graph graph){
+        this(pane, graph, null);
+    }
+
+    /**
+     * Creates a Display that plays back a recorded run of the Graph
+     * @param pane
+     * @param graph Graph the trace was recorded on
+     * @param player TracePlayer of the run, or null to show the live run
+     */
+    public Display(Pane pane, Graph graph, TracePlayer player){
         this.pane = pane;
         this.graph = graph;
+        this.player = player;
 
         //Calculate a multiplier to scale the graph to fit it onto the screen.
         double minMultiplierX = (WINDOWWIDTH - 2 * GRAPHOFFSETX - 200) / (1.0 * (graph.getMaxX() - graph.getMinX()));
         double minMultiplierY = (WIDOWHEIGHT - 2 * GRAPHOFFSETY) / (1.0 * (graph.getMaxY() - graph.getMinY()));
 
-        System.out.println(minMultiplierX + " " + minMultiplierY);
+        Log.debug(-1, -1, "display.scale", "multiplier", Math.min(minMultiplierX, minMultiplierY));
 
         if(minMultiplierY < minMultiplierX){
             multiplier = minMultiplierY;
@@ -47,126 +84,185 @@ public class Display implements GraphicsInterface{
         offsetX = multiplier * graph.getMinX();
         offsetY = multiplier * graph.getMinY();
 
+        buildScene();
+        if(player != null){
+            player.setListener(this::markDirty);
+        }
+        else{
+            graph.setChangeListener(this::markDirty);
+        }
+        //paint every sensor in the first frame
+        synchronized(dirtyLock){
+            dirty.set(0, graph.getSizeOfGraph());
+        }
     }
 
     /**
-     * Method called in the animation timer in order to draw the Graph onto the screen
+     * Creates the shapes of every sensor and edge and the title of the base station log, once
      */
-    public void displayGraph(){
+    private void buildScene(){
+        int size = graph.getSizeOfGraph();
+        circles = new Circle[size];
+        agents = new Circle[size];
+
+        List<Node> lines = new ArrayList<>();
+        for(int id = 0; id < size; id++){
+            Sensor sensor = graph.getSensorById(id);
+            for(int k = 0; k < graph.getDegree(id); k++){
+                int other = graph.getNeighborId(id, k);
+                //each edge is in the adjacency of both its sensors, draw it from the lower id only
+                if(other > id){
+                    lines.add(drawLine(sensor, graph.getSensorById(other)));
+                }
+            }
+            double x = getSensorCoordX(sensor) - offsetX;
+            double y = getSensorCoordY(sensor) - offsetY;
+            agents[id] = new Circle(x, y, 10, Color.LIMEGREEN);
+            agents[id].setVisible(false);
+            circles[id] = new Circle(x, y, 7);
+        }
 
-        Sensor working = graph.getRoot();
-        Stack<Sensor> marked = new Stack<>();
+        Label log = new Label();
+        log.setTranslateX(WINDOWWIDTH - 210);
+        log.setTranslateY(GRAPHOFFSETY);
+        log.setFont(Font.font("News Gothic Standard", 14));
+        log.setText(player == null ? "Base Station Log" : "Replay");
 
-        transverseNextNode(working, marked);
+        pane.getChildren().addAll(lines);
+        pane.getChildren().addAll(agents);
+        pane.getChildren().addAll(circles);
+        pane.getChildren().add(log);
+    }
 
-        List<Node> circles = new ArrayList<>();
-        for(int i = 0; i < pane.getChildren().size(); i++){
-            if(pane.getChildren().get(i) instanceof Circle){
-                circles.add(pane.getChildren().get(i));
-            }
+    /**
+     * Records that a sensor has to be repainted. Called by the Graph from the thread that changed the sensor
+     * @param id id of the changed sensor
+     */
+    private void markDirty(int id){
+        synchronized(dirtyLock){
+            dirty.set(id);
+        }
+    }
+
+    /**
+     * Method called in the animation timer in order to bring the screen up to date. Only the sensors that changed
+     * since the last frame are repainted
+     */
+    @Override
+    public void displayGraph(){
+        if(player != null){
+            player.play();
+        }
+        BitSet changed;
+        synchronized(dirtyLock){
+            changed = dirty;
+            dirty = drawing;
+            drawing = changed;
         }
-        for(Node c: circles){
-            pane.getChildren().remove(c);
-            pane.getChildren().add(c);
+        for(int id = changed.nextSetBit(0); id >= 0; id = changed.nextSetBit(id + 1)){
+            drawSensor(graph.getSensorById(id));
         }
+        changed.clear();
 
+        if(player != null){
+            displayReplay();
+            return;
+        }
+        Sensor station = graph.getBaseStation();
+        if(station instanceof BaseStation){
+            displayLog((BaseStation) station);
+        }
     }
 
     /**
-     * Recursive function that finds the neighboring nodes of a current working node and then draws it onto
-     * the board and marks it as transversed so that it does not draw the node again. In addition, a line is drawn
-     * between the working node and the neighboring nodes of that working node
-     * @param working current node getting the neighbors of
-     * @param marked a stack of sensors that defines which ones have been transversed already
+     * Shows the time and speed of the playback where the log would be
      */
-    private void transverseNextNode(Sensor working, Stack<Sensor> marked){
-        if(!marked.contains(working)){
-            drawSensor(working);
-            marked.push(working);
-            if(working instanceof BaseStation){
-                displayLog(working);
-            }
-        }
-        for(Sensor neighbors: graph.getNeighbors(working)){
-            drawLine(working, neighbors);
-            if(marked.size() < graph.getSizeOfGraph()){
-                //drawLine(working, neighbors) if you want to draw one path from the first to the last node.
-                if(!marked.contains(neighbors)){
-                    transverseNextNode(neighbors, marked);
-                }
-            }
+    private void displayReplay(){
+        if(replayLabel == null){
+            replayLabel = new Label();
+            replayLabel.setTranslateX(WINDOWWIDTH - 210);
+            replayLabel.setTranslateY(GRAPHOFFSETY + 20);
+            replayLabel.setFont(Font.font("News Gothic Standard", 9));
+            pane.getChildren().add(replayLabel);
         }
+        replayLabel.setText(describeReplay(player));
     }
 
     /**
-     * Display the base station log when the base station node has been transversed in
-     * the method transverseNextNode()
-     * @param station
+     * Builds the text showing where a playback is
+     * @param player TracePlayer to describe
+     * @return String with the time, the speed and the messages played back
      */
-    private void displayLog(Sensor station){
-        Label log = new Label();
-        log.setTranslateX(WINDOWWIDTH - 210);
-        log.setTranslateY(GRAPHOFFSETY);
-        log.setFont(Font.font("News Gothic Standard", 14));
-        log.setText("Base Station Log");
+    static String describeReplay(TracePlayer player){
+        return String.format("%.1f s of %.1f s, x%s%s%n%d of %d messages", player.getTime() / 1e9,
+                player.getEndTime() / 1e9, player.getSpeed(), player.isPaused() ? " (paused)" : "",
+                player.getHopsPlayed(), player.getHops());
+    }
 
-        List<String> thisLog = ((BaseStation)station).getLog();
-        for(int i = 0; i < thisLog.size(); i++){
+    /**
+     * Adds the lines of the base station log that are not on the screen yet
+     * @param station
+     */
+    private void displayLog(BaseStation station){
+        if(logCursor == null){
+            logCursor = station.getEventLog().cursor();
+        }
+        while(logCursor.hasNext()){
             Label line = new Label();
             line.setTranslateX(WINDOWWIDTH - 210);
-            line.setTranslateY(GRAPHOFFSETY + i * 10 + 20);
+            line.setTranslateY(GRAPHOFFSETY + logLines * 10 + 20);
             line.setFont(Font.font("News Gothic Standard", 9));
-            line.setText(thisLog.get(i));
+            line.setText(station.describe(logCursor.next()));
             pane.getChildren().add(line);
+            logLines++;
         }
-
-        pane.getChildren().add(log);
     }
 
     /**
-     * A function called in transverseNextNode() in order to draw a line between two different sensors in the graph
+     * A function called when the scene is built in order to create a line between two different sensors in the graph
      * @param sensor1 a Sensor to draw from
      * @param sensor2 a Sensor to draw to
+     * @return the Line between the two sensors
      */
-    private void drawLine(Sensor sensor1, Sensor sensor2){
-        Line line = new Line(getSensorCoordX(sensor1) - offsetX, getSensorCoordY(sensor1) - offsetY,
+    private Line drawLine(Sensor sensor1, Sensor sensor2){
+        return new Line(getSensorCoordX(sensor1) - offsetX, getSensorCoordY(sensor1) - offsetY,
                                 getSensorCoordX(sensor2) - offsetX, getSensorCoordY(sensor2) - offsetY);
-        pane.getChildren().add(line);
     }
 
     /**
-     * Method called in transverseNextNode() in order to draw a node onto the screen that has been transversed.
+     * Repaints the circle of a sensor for its current status and shows or hides its agent marker
      * @param sensor
      */
     private void drawSensor(Sensor sensor){
-        Circle circle;
-        if(sensor instanceof BaseStation){
-            if(!(sensor.reportStatus().equals("fire") || sensor.reportStatus().equals("dead"))){
-                circle = new Circle(getSensorCoordX(sensor) - offsetX, getSensorCoordY(sensor) - offsetY, 7, Color.BLUE);
-            }
-            else{
-                circle = new Circle(getSensorCoordX(sensor) - offsetX, getSensorCoordY(sensor) - offsetY, 7, Color.RED);
-            }
-        }
-        else if(sensor.reportStatus().equals("fire") || sensor.reportStatus().equals("dead")){
-            circle = new Circle(getSensorCoordX(sensor) - offsetX, getSensorCoordY(sensor) - offsetY, 7, Color.RED);
-        }
-        else if(sensor.reportStatus().equals("alert")){
-            circle = new Circle(getSensorCoordX(sensor) - offsetX, getSensorCoordY(sensor) - offsetY, 7, Color.YELLOW);
+        int id = sensor.getId();
+        if(player != null){
+            circles[id].setFill(colorOf(player.getStatus(id), sensor instanceof BaseStation));
+            agents[id].setVisible(player.hasAgent(id));
         }
         else{
-            circle = new Circle(getSensorCoordX(sensor)- offsetX, getSensorCoordY(sensor) - offsetY, 7);
+            circles[id].setFill(colorOf(sensor.getStatus(), sensor instanceof BaseStation));
+            agents[id].setVisible(sensor.agentPresent());
         }
+    }
 
-        Circle agent;
-        if(sensor.agentPresent()){
-            agent = new Circle(getSensorCoordX(sensor) - offsetX, getSensorCoordY(sensor) - offsetY, 10, Color.LIMEGREEN);
-            //System.out.println(sensor + " has agent");
-            pane.getChildren().add(agent);
-
+    /**
+     * Picks the color of a sensor: red once it is on fire or dead, yellow when alerted, blue for the base station
+     * otherwise and black for any other sensor
+     * @param status Status of the sensor
+     * @param baseStation true for the base station
+     * @return Color to fill the circle of the sensor with
+     */
+    static Color colorOf(Status status, boolean baseStation){
+        if(status.isAtLeast(Status.FIRE)){
+            return Color.RED;
         }
-
-        pane.getChildren().add(circle);
+        else if(baseStation){
+            return Color.BLUE;
+        }
+        else if(status == Status.ALERT){
+            return Color.YELLOW;
+        }
+        return Color.BLACK;
     }
 
     /**
@@ -187,11 +283,4 @@ public class Display implements GraphicsInterface{
         return multiplier * sensor.getY() + GRAPHOFFSETY;
     }
 
-    /**
-     * Method called in the animation time in order to remove all of the children for this pane
-     */
-    public void removeAll(){
-        pane.getChildren().removeAll(pane.getChildren());
-    }
-
 }
@@ -0,0 +1,11 @@
+/**
+ * A way of drawing the simulation onto the screen. Graphics picks one and calls it from its animation timer
+ */
+public interface DisplayBackend {
+
+    /**
+     * Brings the screen up to date with the Graph. Called once per frame on the JavaFX thread
+     */
+    void displayGraph();
+
+}
@@ -0,0 +1,283 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Append-only log of the Messages that reach the Base Station.
+ *
+ * Every Message is written as a small binary record into segments of a file mapped into memory, so appending costs a
+ * few writes to memory and no text is built. Only the last WINDOW Messages are kept as objects. Any number of readers
+ * go through the whole log with Cursors while it is written: a record is published by moving the committed position
+ * past it once it is complete, and readers never take the lock writers append under.
+ *
+ * The file is only created when the first record is written, and deleted when the log is closed, so a log has to be
+ * closed once it is no longer read.
+ *
+ * A record is its length, the type, source, sequence and payload of the Message and the Agent id, if any. A record
+ * never crosses the end of a segment, a length of 0 tells readers the rest of the segment is empty.
+ */
+public class EventLog {
+
+    /**
+     * Number of Messages kept in memory
+     */
+    public static final int WINDOW = 256;
+
+    /**
+     * Size of a segment of the file when none is given
+     */
+    public static final int DEFAULT_SEGMENT_BYTES = 4 << 20;
+
+    //length, type, source, sequence, payload and length of the Agent id
+    private static final int HEADER_BYTES = 4 + 1 + 4 + 4 + 8 + 4;
+    private static final Message.Type[] TYPES = Message.Type.values();
+    //one more slot than the window, so the append in progress never writes over a Message getRecent() is copying
+    private static final int SLOTS = WINDOW + 1;
+    //copies getRecent() makes while Messages keep being appended before it copies under the lock instead
+    private static final int RECENT_TRIES = 4;
+
+    //created with the first segment
+    private File file = null;
+    private final int segmentBytes;
+    private volatile MappedByteBuffer[] segments = new MappedByteBuffer[0];
+
+    //position the next record is written at, only changed under the lock
+    private long written = 0;
+    //position up to which records are complete, readers stop there
+    private volatile long committed = 0;
+    private volatile long count = 0;
+    private final AtomicReferenceArray<Message> recent = new AtomicReferenceArray<>(SLOTS);
+    private volatile boolean closed = false;
+
+    /**
+     * Creates an empty log, written to a temporary file once a Message is appended
+     */
+    public EventLog(){
+        this(DEFAULT_SEGMENT_BYTES);
+    }
+
+    /**
+     * Creates an empty log with segments of the given size
+     * @param segmentBytes bytes mapped at a time, must hold at least one record
+     */
+    public EventLog(int segmentBytes){
+        if(segmentBytes < HEADER_BYTES + 4){
+            throw new IllegalArgumentException("segments must hold a record: " + segmentBytes);
+        }
+        this.segmentBytes = segmentBytes;
+    }
+
+    /**
+     * Adds a Message to the end of the log
+     * @param message Message that reached the Base Station
+     */
+    public void append(Message message){
+        String agentId = message.getAgentId();
+        byte[] id = agentId == null ? new byte[0] : agentId.getBytes(StandardCharsets.UTF_8);
+        int length = HEADER_BYTES + id.length;
+        if(length > segmentBytes){
+            throw new IllegalArgumentException("Message too long for a segment: " + message);
+        }
+        synchronized(this){
+            if(closed){
+                return;
+            }
+            int offset = (int) (written % segmentBytes);
+            if(offset + length > segmentBytes){
+                //not enough room left, mark the rest of the segment as empty and start the next one
+                if(written > 0 && segmentBytes - offset >= 4){
+                    segments[(int) (written / segmentBytes)].putInt(offset, 0);
+                }
+                written += segmentBytes - offset;
+                offset = 0;
+            }
+            int index = (int) (written / segmentBytes);
+            if(index == segments.length){
+                map(index);
+            }
+            MappedByteBuffer segment = segments[index];
+            segment.putInt(offset, length);
+            segment.put(offset + 4, (byte) message.getType().ordinal());
+            segment.putInt(offset + 5, message.getSource());
+            segment.putInt(offset + 9, message.getSequence());
+            segment.putLong(offset + 13, message.getPayload());
+            segment.putInt(offset + 21, id.length);
+            for(int i = 0; i < id.length; i++){
+                segment.put(offset + HEADER_BYTES + i, id[i]);
+            }
+            written += length;
+
+            long number = count;
+            recent.set((int) (number % SLOTS), message);
+            count = number + 1;
+            committed = written;
+        }
+    }
+
+    /**
+     * Returns the number of Messages appended so far
+     * @return long number of Messages
+     */
+    public long size(){
+        return count;
+    }
+
+    /**
+     * Returns the number of bytes the records take up in the file, padding included
+     * @return long bytes written
+     */
+    public long getBytes(){
+        return committed;
+    }
+
+    /**
+     * Returns the last Messages appended, oldest first, without reading the file
+     * @return List of at most WINDOW Messages
+     */
+    public List<Message> getRecent(){
+        List<Message> messages = new ArrayList<>();
+        //the append in progress writes the spare slot, but once one finishes the next may overwrite the oldest
+        //Message being copied, so copy again whenever the count moved
+        for(int tries = 0; tries < RECENT_TRIES; tries++){
+            if(copyRecent(messages) == count){
+                return messages;
+            }
+        }
+        //Messages keep coming in faster than they are copied, hold the writers off for one copy
+        synchronized(this){
+            copyRecent(messages);
+        }
+        return messages;
+    }
+
+    /**
+     * Copies the last WINDOW Messages appended into a List, in place of what it held
+     * @param messages List to fill
+     * @return long number of Messages appended when the copy started
+     */
+    private long copyRecent(List<Message> messages){
+        messages.clear();
+        long end = count;
+        for(long i = Math.max(0, end - WINDOW); i < end; i++){
+            messages.add(recent.get((int) (i % SLOTS)));
+        }
+        return end;
+    }
+
+    /**
+     * Creates a reader positioned at the start of the log
+     * @return Cursor over every Message of the log
+     */
+    public Cursor cursor(){
+        return new Cursor();
+    }
+
+    /**
+     * Stops the log and deletes its file. Cursors must not be used afterwards
+     */
+    public synchronized void close(){
+        closed = true;
+        segments = new MappedByteBuffer[0];
+        committed = 0;
+        if(file != null){
+            file.delete();
+        }
+    }
+
+    /**
+     * Maps the next segment of the file, which grows the file
+     */
+    private void map(int index){
+        try{
+            if(file == null){
+                file = File.createTempFile("basestation_", ".log");
+            }
+        } catch(IOException io){
+            throw new UncheckedIOException(io);
+        }
+        //the mapping stays valid once the file is closed
+        try(RandomAccessFile access = new RandomAccessFile(file, "rw")){
+            MappedByteBuffer segment = access.getChannel().map(FileChannel.MapMode.READ_WRITE,
+                    (long) index * segmentBytes, segmentBytes);
+            MappedByteBuffer[] grown = Arrays.copyOf(segments, index + 1);
+            grown[index] = segment;
+            segments = grown;
+        } catch(IOException io){
+            throw new UncheckedIOException(io);
+        }
+    }
+
+    /**
+     * Reads the Messages of the log in order. A Cursor only sees the records committed when it is asked, and is meant
+     * for one thread
+     */
+    public class Cursor {
+
+        private long position = 0;
+
+        private Cursor(){
+
+        }
+
+        /**
+         * Checks if a committed Message is waiting to be read
+         * @return boolean for whether next() has a Message
+         */
+        public boolean hasNext(){
+            //the same committed position for both, padding is only known to be padding below it
+            long end = committed;
+            skipPadding(end);
+            return position < end;
+        }
+
+        /**
+         * Reads the next Message
+         * @return the Message, or null if none is committed yet
+         */
+        public Message next(){
+            if(!hasNext()){
+                return null;
+            }
+            MappedByteBuffer segment = segments[(int) (position / segmentBytes)];
+            int offset = (int) (position % segmentBytes);
+            int length = segment.getInt(offset);
+            Message.Type type = TYPES[segment.get(offset + 4)];
+            int source = segment.getInt(offset + 5);
+            int sequence = segment.getInt(offset + 9);
+            long payload = segment.getLong(offset + 13);
+            int idLength = segment.getInt(offset + 21);
+            String agentId = null;
+            if(idLength > 0){
+                byte[] id = new byte[idLength];
+                for(int i = 0; i < idLength; i++){
+                    id[i] = segment.get(offset + HEADER_BYTES + i);
+                }
+                agentId = new String(id, StandardCharsets.UTF_8);
+            }
+            position += length;
+            return Message.restore(type, source, sequence, payload, agentId);
+        }
+
+        /**
+         * Moves to the start of the next segment if the rest of this one is empty
+         * @param end committed position read by the caller
+         */
+        private void skipPadding(long end){
+            if(position >= end){
+                return;
+            }
+            int offset = (int) (position % segmentBytes);
+            if(segmentBytes - offset < 4 || segments[(int) (position / segmentBytes)].getInt(offset) == 0){
+                position += segmentBytes - offset;
+            }
+        }
+    }
+}
@@ -1,9 +1,31 @@
 import java.util.*;
+import java.util.function.IntConsumer;
 
+/**
+ * The Graph holds the Sensors and the edges between them.
+ *
+ * While loading, edges are only recorded as pairs of Sensor ids. The first time adjacency is read (or when freeze() is
+ * called) they are turned into a compressed sparse row form: offsets[id] to offsets[id + 1] is the slice of adjacency
+ * that holds the ids of the neighbors of a Sensor. Each edge then costs two ints, and no edge can be added afterwards.
+ * Freezing also builds the routing tree toward the base station.
+ */
 public class Graph {
 
     private List<Sensor> sensorsInGraph = new ArrayList<>();
-    private Map<Sensor, List<Sensor>> adjSensors = new HashMap<>();
+    private SensorIndex index = new SensorIndex();
+    //edges recorded while loading, as pairs of sensor ids
+    private IntList pendingEdges = new IntList();
+    //compressed sparse row adjacency, null until the graph is frozen
+    private volatile int[] offsets = null;
+    private int[] adjacency;
+    private Sensor[] sensorsById;
+    private NeighborList[] neighborViews;
+    //breadth first tree toward the base station, built when the graph is frozen
+    private int[] routeParents;
+    private int[] routeHops;
+    //told the id of every Sensor whose status or Agent changes, used by the Display
+    private volatile IntConsumer changeListener = null;
+    private volatile Trace trace = null;
     private Sensor root = null;
     private Sensor baseStation = null;
     private int sizeOfGraph;
@@ -23,9 +45,11 @@ public class Graph {
     /**
      * Add sensor when given a sensor
      * Check if the graph was empty or not and create the root if it was
+     * The sensor is given the next id and put in the coordinate index
      * @param sensor sensor to put onto the Graph
      */
     protected void addSensor(Sensor sensor){
+        checkNotFrozen();
         if(root == null){
             root = sensor;
         }
@@ -46,19 +70,46 @@ public class Graph {
         else if(sensor.getY() > maxY){
             maxY = sensor.getY();
         }
-        adjSensors.putIfAbsent(sensor, new ArrayList<>());
+        sensor.setId(sensorsInGraph.size());
+        sensor.setGraph(this);
+        index.put(sensor.getX(), sensor.getY(), sensor.getId());
         sensorsInGraph.add(sensor);
         sizeOfGraph++;
-        System.out.println(sensorsInGraph);
+        Log.trace(sensor.getId(), -1, "sensor.added");
     }
 
     /**
      * remove a sensor on the graph when given a sensor to remove
+     * Its edges are dropped and the sensors added after it move down one id, so ids stay positions in the graph
      * @param sensor to remove
      */
     protected void removeSensor(Sensor sensor){
-        adjSensors.values().stream().forEach(e -> e.remove(sensor));
-        adjSensors.remove(sensor);
+        checkNotFrozen();
+        int removed = sensor.getId();
+        int kept = 0;
+        for(int i = 0; i < pendingEdges.size(); i += 2){
+            int from = pendingEdges.get(i);
+            int to = pendingEdges.get(i + 1);
+            if(from != removed && to != removed){
+                pendingEdges.set(kept++, from > removed ? from - 1 : from);
+                pendingEdges.set(kept++, to > removed ? to - 1 : to);
+            }
+        }
+        pendingEdges.truncate(kept);
+        sensorsInGraph.remove(removed);
+        //the index has no removal, it is rebuilt with the new ids
+        index = new SensorIndex();
+        for(int id = 0; id < sensorsInGraph.size(); id++){
+            Sensor other = sensorsInGraph.get(id);
+            other.setId(id);
+            index.put(other.getX(), other.getY(), id);
+        }
+        if(root == sensor){
+            root = sensorsInGraph.isEmpty() ? null : sensorsInGraph.get(0);
+        }
+        if(baseStation == sensor){
+            baseStation = null;
+        }
         sizeOfGraph--;
     }
 
@@ -68,10 +119,9 @@ public class Graph {
      * @param sensor2
      */
     protected void addEdge(Sensor sensor1, Sensor sensor2){
-        adjSensors.get(sensor1).add(sensor2);
-        adjSensors.get(sensor2).add(sensor1);
-        sensor1.addNeighbor(sensor2);
-        sensor2.addNeighbor(sensor1);
+        checkNotFrozen();
+        pendingEdges.add(sensor1.getId());
+        pendingEdges.add(sensor2.getId());
     }
 
     /**
@@ -80,33 +130,236 @@ public class Graph {
      * @param sensor2 second sensor that shares an edge with sensor 1 to remove
      */
     protected void removeEdge(Sensor sensor1, Sensor sensor2) {
-        List<Sensor> eS1 = adjSensors.get(sensor1);
-        List<Sensor> eS2 = adjSensors.get(sensor2);
-        if (eS1 != null) {
-            eS1.remove(sensor1);
+        checkNotFrozen();
+        int id1 = sensor1.getId();
+        int id2 = sensor2.getId();
+        int kept = 0;
+        for(int i = 0; i < pendingEdges.size(); i += 2){
+            int from = pendingEdges.get(i);
+            int to = pendingEdges.get(i + 1);
+            if(!((from == id1 && to == id2) || (from == id2 && to == id1))){
+                pendingEdges.set(kept++, from);
+                pendingEdges.set(kept++, to);
+            }
+        }
+        pendingEdges.truncate(kept);
+    }
+
+    /**
+     * Builds the compressed sparse row adjacency out of the edges recorded so far. Duplicate edges and self loops are
+     * dropped. Called by the loader once every edge is in, and otherwise the first time adjacency is read
+     */
+    protected synchronized void freeze(){
+        if(offsets != null){
+            return;
+        }
+        int n = sensorsInGraph.size();
+        int[] starts = new int[n + 1];
+        for(int i = 0; i < pendingEdges.size(); i += 2){
+            if(pendingEdges.get(i) != pendingEdges.get(i + 1)){
+                starts[pendingEdges.get(i) + 1]++;
+                starts[pendingEdges.get(i + 1) + 1]++;
+            }
+        }
+        for(int id = 0; id < n; id++){
+            starts[id + 1] += starts[id];
+        }
+        int[] neighbors = new int[starts[n]];
+        int[] next = Arrays.copyOf(starts, n);
+        for(int i = 0; i < pendingEdges.size(); i += 2){
+            int from = pendingEdges.get(i);
+            int to = pendingEdges.get(i + 1);
+            if(from != to){
+                neighbors[next[from]++] = to;
+                neighbors[next[to]++] = from;
+            }
+        }
+
+        //sort each row and squeeze out the duplicates
+        int[] compact = new int[n + 1];
+        int write = 0;
+        for(int id = 0; id < n; id++){
+            compact[id] = write;
+            Arrays.sort(neighbors, starts[id], starts[id + 1]);
+            for(int i = starts[id]; i < starts[id + 1]; i++){
+                if(i == starts[id] || neighbors[i] != neighbors[i - 1]){
+                    neighbors[write++] = neighbors[i];
+                }
+            }
+        }
+        compact[n] = write;
+
+        adjacency = Arrays.copyOf(neighbors, write);
+        sensorsById = sensorsInGraph.toArray(new Sensor[0]);
+        neighborViews = new NeighborList[n];
+        pendingEdges = null;
+        buildRoutes(compact);
+        offsets = compact;
+    }
+
+    /**
+     * Breadth first search from the base station over the frozen adjacency. Every sensor gets the neighbor one hop
+     * closer to the base station as its parent, so messages for the base station only travel down one path of the
+     * tree instead of flooding the graph. Sensors the base station cannot reach get -1 for both
+     * @param starts offsets of the adjacency rows
+     */
+    private void buildRoutes(int[] starts){
+        int n = sensorsInGraph.size();
+        routeParents = new int[n];
+        routeHops = new int[n];
+        Arrays.fill(routeParents, -1);
+        Arrays.fill(routeHops, -1);
+        if(baseStation == null){
+            return;
+        }
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        queue[tail++] = baseStation.getId();
+        routeHops[baseStation.getId()] = 0;
+        while(head < tail){
+            int id = queue[head++];
+            for(int i = starts[id]; i < starts[id + 1]; i++){
+                int neighbor = adjacency[i];
+                if(routeHops[neighbor] < 0){
+                    routeHops[neighbor] = routeHops[id] + 1;
+                    routeParents[neighbor] = id;
+                    queue[tail++] = neighbor;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the neighbor one hop closer to the base station on the routing tree
+     * @param id id of the Sensor
+     * @return int id of the parent, -1 for the base station and for sensors it cannot reach
+     */
+    protected int getRouteParent(int id){
+        frozenOffsets();
+        return routeParents[id];
+    }
+
+    /**
+     * Returns the number of hops between a Sensor and the base station
+     * @param id id of the Sensor
+     * @return int number of hops, -1 if the base station cannot be reached
+     */
+    protected int getHopsToBaseStation(int id){
+        frozenOffsets();
+        return routeHops[id];
+    }
+
+    /**
+     * Returns true once the adjacency has been built and edges can no longer be added
+     * @return boolean for whether the Graph is frozen
+     */
+    protected boolean isFrozen(){
+        return offsets != null;
+    }
+
+    /**
+     * Creates a Graph with the same topology and fresh Sensors, for another run of the simulation. The adjacency
+     * and the coordinate index are shared with this Graph, since they no longer change once it is frozen; only the
+     * Sensors, which hold the state of a run, are new
+     * @return Graph with new Sensors in the same places
+     */
+    protected Graph instantiate(){
+        int[] starts = frozenOffsets();
+        Graph copy = new Graph();
+        copy.index = index;
+        copy.adjacency = adjacency;
+        copy.routeParents = routeParents;
+        copy.routeHops = routeHops;
+        copy.pendingEdges = null;
+        copy.sensorsById = new Sensor[sensorsById.length];
+        for(Sensor original: sensorsById){
+            Sensor sensor;
+            if(original instanceof BaseStation){
+                sensor = new BaseStation(original.getX(), original.getY());
+                copy.baseStation = sensor;
+            }
+            else{
+                sensor = new Sensor(original.getX(), original.getY());
+            }
+            sensor.setId(original.getId());
+            sensor.setGraph(copy);
+            copy.sensorsById[sensor.getId()] = sensor;
+            copy.sensorsInGraph.add(sensor);
         }
-        if (eS2 != null) {
-            eS2.remove(sensor2);
+        copy.root = root == null ? null : copy.sensorsById[root.getId()];
+        copy.sizeOfGraph = sizeOfGraph;
+        copy.minX = minX;
+        copy.minY = minY;
+        copy.maxX = maxX;
+        copy.maxY = maxY;
+        copy.neighborViews = new NeighborList[sensorsById.length];
+        copy.offsets = starts;
+        return copy;
+    }
+
+    private void checkNotFrozen(){
+        if(offsets != null){
+            throw new IllegalStateException("The graph is frozen, sensors and edges can no longer change");
+        }
+    }
+
+    private int[] frozenOffsets(){
+        int[] result = offsets;
+        if(result == null){
+            freeze();
+            result = offsets;
         }
+        return result;
     }
 
     /**
      * Get the all nodes connected to a given node by edges
+     * The List is a read only view over the adjacency of the Graph
      * @param sensor sensor to check for neighbors
      * @return a List of sensors
      */
     protected List<Sensor> getNeighbors(Sensor sensor){
-        return adjSensors.get(sensor);
+        int[] starts = frozenOffsets();
+        int id = sensor.getId();
+        NeighborList view = neighborViews[id];
+        if(view == null){
+            view = new NeighborList(starts[id], starts[id + 1]);
+            neighborViews[id] = view;
+        }
+        return view;
     }
 
     /**
-     * Starts each thread for the sensors in the graph
+     * Returns the number of neighbors of the Sensor with the given id
+     * @param id id of the Sensor
+     * @return int number of neighbors
      */
-    protected void startThreadsForAllSensors(){
+    protected int getDegree(int id){
+        int[] starts = frozenOffsets();
+        return starts[id + 1] - starts[id];
+    }
+
+    /**
+     * Returns the id of one of the neighbors of a Sensor, so that hot loops can walk the adjacency without
+     * going through Sensor objects
+     * @param id id of the Sensor
+     * @param index position of the neighbor, from 0 to getDegree(id) - 1
+     * @return int id of the neighbor
+     */
+    protected int getNeighborId(int id, int index){
+        return adjacency[frozenOffsets()[id] + index];
+    }
+
+    /**
+     * Starts each sensor in the graph with the given Scheduler, as a thread or as an actor depending on its mode
+     * @param scheduler Scheduler running the sensors
+     */
+    protected void startThreadsForAllSensors(Scheduler scheduler){
         for(Sensor sensor: sensorsInGraph){
-            System.out.println("Thread started");
-            new Thread(sensor).start();
+            scheduler.start(sensor);
         }
+        scheduler.getMetrics().watchMailboxes(sensorsInGraph);
+        Log.info(-1, scheduler.now(), "sensors.started", "mode", scheduler.getMode());
     }
 
     /**
@@ -117,12 +370,48 @@ public class Graph {
      * has any neighboring Sensors
      */
     protected boolean hasNeighbors(Sensor sensor){
-        if(adjSensors.get(sensor) != null){
+        if(sensor.getId() >= 0 && getDegree(sensor.getId()) > 0){
             return true;
         }
         return false;
     }
 
+    /**
+     * Sets the listener told about every change of status or Agent of a Sensor of this Graph. It is called from
+     * whichever thread made the change, so it should only record the id
+     * @param listener IntConsumer taking the id of the changed Sensor, or null for none
+     */
+    protected void setChangeListener(IntConsumer listener){
+        this.changeListener = listener;
+    }
+
+    /**
+     * Sets the Trace the Sensors of this Graph record their status changes, messages and Agents to
+     * @param trace Trace to record to, or null to stop recording
+     */
+    protected void setTrace(Trace trace){
+        this.trace = trace;
+    }
+
+    /**
+     * Retrieves the Trace the Sensors record to
+     * @return Trace of the run, or null if it is not recorded
+     */
+    protected Trace getTrace(){
+        return this.trace;
+    }
+
+    /**
+     * Called by a Sensor of this Graph when its status or its Agent changes
+     * @param id id of the Sensor
+     */
+    void sensorChanged(int id){
+        IntConsumer listener = changeListener;
+        if(listener != null){
+            listener.accept(id);
+        }
+    }
+
     /**
      * Retrieves the root node of the Graph
      * @return Sensor representing the root
@@ -149,15 +438,50 @@ public class Graph {
      * @return Sensor at the given location
      */
     protected Sensor getSensor(int x, int y){
-        Sensor toReturn = new Sensor(0, 0);
+        Sensor sensor = findSensor(x, y);
+        if(sensor == null){
+            return new Sensor(0, 0);
+        }
+        return sensor;
+    }
 
-        for(Sensor sensor: sensorsInGraph){
-            if(sensor.getX() == x && sensor.getY() == y){
-                toReturn = sensor;
-            }
+    /**
+     * Looks up the Sensor at the given location through the coordinate index
+     * @param x x-coordinate of the Sensor
+     * @param y y-coordinate of the Sensor
+     * @return Sensor at the given location, or null if there is none
+     */
+    protected Sensor findSensor(int x, int y){
+        int id = index.get(x, y);
+        if(id < 0){
+            return null;
         }
+        return sensorsInGraph.get(id);
+    }
 
-        return toReturn;
+    /**
+     * Finds every Sensor within the given distance of a location
+     * @param x x-coordinate of the center
+     * @param y y-coordinate of the center
+     * @param radius distance from the center, the edge of the circle included
+     * @return List of the Sensors found, in no particular order
+     */
+    protected List<Sensor> getSensorsWithin(int x, int y, double radius){
+        int[] ids = index.within(x, y, radius);
+        List<Sensor> found = new ArrayList<>(ids.length);
+        for(int id: ids){
+            found.add(sensorsInGraph.get(id));
+        }
+        return found;
+    }
+
+    /**
+     * Retrieves a Sensor by the id it was given when it was added
+     * @param id id of the Sensor
+     * @return Sensor with that id
+     */
+    protected Sensor getSensorById(int id){
+        return sensorsInGraph.get(id);
     }
 
     /**
@@ -206,4 +530,31 @@ public class Graph {
         return this.maxY;
     }
 
+    /**
+     * Read only List over one row of the adjacency
+     */
+    private class NeighborList extends AbstractList<Sensor> implements RandomAccess {
+
+        private final int from;
+        private final int to;
+
+        private NeighborList(int from, int to){
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public Sensor get(int index){
+            if(index < 0 || index >= to - from){
+                throw new IndexOutOfBoundsException("Index: " + index + ", Size: " + (to - from));
+            }
+            return sensorsById[adjacency[from + index]];
+        }
+
+        @Override
+        public int size(){
+            return to - from;
+        }
+    }
+
 }
@@ -2,14 +2,19 @@ import javafx.animation.AnimationTimer;
 import javafx.application.Application;
 import javafx.scene.Parent;
 import javafx.scene.Scene;
+import javafx.scene.input.KeyEvent;
 import javafx.scene.layout.Pane;
 import javafx.stage.Stage;
 
+import java.io.IOException;
 import java.util.List;
 
 public class Graphics extends Application implements GraphicsInterface{
 
     private Graph graph;
+    private Main main;
+    //plays back a recorded run, null when the run is live
+    private TracePlayer player = null;
 
     /**
      * The extension of Application requires for an empty constructor of Graphics
@@ -28,13 +33,31 @@ public class Graphics extends Application implements GraphicsInterface{
 
         Parameters parameters = getParameters();
         List<String> strings = parameters.getRaw();
-        Main main = new Main(strings);
+        main = new Main(strings);
         graph = main.getGraph();
+        if(main.isReplay()){
+            try{
+                player = new TracePlayer(main.getTraceFile());
+            } catch(IOException io){
+                System.err.println(io);
+            }
+            //the optional sixth argument is the speed of the playback
+            if(player != null && strings.size() > 5){
+                player.setSpeed(Double.parseDouble(strings.get(5)));
+            }
+        }
 
         Pane pane = new Pane();
         pane.setPrefSize(WINDOWWIDTH, WIDOWHEIGHT);
 
-        Display display = new Display(pane, graph);
+        //the optional third argument picks the renderer: nodes (the default) or canvas for very large graphs
+        DisplayBackend display;
+        if(strings.size() > 2 && strings.get(2).equalsIgnoreCase("canvas")){
+            display = new CanvasDisplay(pane, graph, player);
+        }
+        else{
+            display = new Display(pane, graph, player);
+        }
         //System.out.println(graph.getRoot());
 
         AnimationTimer timer = new MyTimer(display);
@@ -52,31 +75,72 @@ public class Graphics extends Application implements GraphicsInterface{
     public void start(Stage stage) throws Exception {
 
         stage.setTitle("Fire Simulation");
-        stage.setScene(new Scene(createGame()));
+        Scene scene = new Scene(createGame());
+        if(player != null){
+            scene.setOnKeyPressed(this::controlReplay);
+        }
+        stage.setScene(scene);
         stage.show();
     }
 
+    @Override
+    /**
+     * Writes out the rest of the trace when the window closes
+     */
+    public void stop(){
+        if(main != null){
+            main.close();
+        }
+    }
+
+    /**
+     * Keys of the playback: space pauses, left and right jump back and forward by a tenth of the run, up and down
+     * double and halve the speed and home goes back to the start
+     * @param event key pressed
+     */
+    private void controlReplay(KeyEvent event){
+        long jump = player.getEndTime() / 10;
+        switch(event.getCode()){
+            case SPACE:
+                player.setPaused(!player.isPaused());
+                break;
+            case LEFT:
+                player.seek(player.getTime() - jump);
+                break;
+            case RIGHT:
+                player.seek(player.getTime() + jump);
+                break;
+            case UP:
+                player.setSpeed(player.getSpeed() * 2);
+                break;
+            case DOWN:
+                player.setSpeed(player.getSpeed() / 2);
+                break;
+            case HOME:
+                player.seek(0);
+                break;
+            default:
+        }
+    }
+
     public static void main(String[] args) {
         launch(args);
     }
 
     private class MyTimer extends AnimationTimer {
 
-        private Display display;
+        private DisplayBackend display;
 
-        public MyTimer(Display display){
+        public MyTimer(DisplayBackend display){
             this.display = display;
         }
 
         @Override
         /**
-         * Redraws the graph every 50 milliseconds
+         * Brings the screen up to date every frame, which only repaints the Sensors that changed since the last one
          */
         public void handle(long now){
-            if(now % 20 == 0){
-                display.removeAll();
-                display.displayGraph();
-            }
+            display.displayGraph();
         }
 
     }
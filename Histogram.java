@@ -0,0 +1,134 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative long values, such as latencies in nanoseconds or queue depths, that many threads
+ * record into at once.
+ *
+ * Values are counted in buckets the way HdrHistogram does it: every power of two is split into SUB_BUCKETS buckets
+ * of equal width, so a value is known to within an eighth of itself whatever its size, and the whole range of a
+ * long fits in a few hundred buckets. Recording a value is a shift and an increment, nothing is allocated.
+ *
+ * The buckets are striped: each thread counts into one of several copies picked from its id, so threads recording
+ * at the same time rarely touch the same cache line. Reading a percentile adds the stripes up, which is slower but
+ * only happens when the metrics are looked at.
+ */
+public class Histogram {
+
+    //buckets per power of two, and the bits of a value below its top bit that pick one
+    private static final int SUB_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS + 1) * SUB_BUCKETS;
+
+    private final int stripeMask;
+    private final AtomicLongArray counts;
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    /**
+     * Creates an empty Histogram with a stripe for about every processor
+     */
+    public Histogram(){
+        int stripes = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors()) * 2 - 1);
+        stripeMask = stripes - 1;
+        counts = new AtomicLongArray(stripes * BUCKETS);
+    }
+
+    /**
+     * Counts a value. Negative values count as 0
+     * @param value value to record
+     */
+    public void record(long value){
+        if(value < 0){
+            value = 0;
+        }
+        int stripe = (int) Thread.currentThread().getId() & stripeMask;
+        counts.getAndIncrement(stripe * BUCKETS + bucket(value));
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    /**
+     * Returns the number of values recorded
+     * @return long count
+     */
+    public long getCount(){
+        long count = 0;
+        for(int i = 0; i < counts.length(); i++){
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * Returns the mean of the values recorded
+     * @return double mean, 0 if nothing was recorded
+     */
+    public double getMean(){
+        long count = getCount();
+        return count == 0 ? 0 : sum.sum() / (double) count;
+    }
+
+    /**
+     * Returns the largest value recorded
+     * @return long exact maximum, 0 if nothing was recorded
+     */
+    public long getMax(){
+        return max.get();
+    }
+
+    /**
+     * Returns the value below which the given share of the recorded values fall, to within the width of its bucket
+     * @param percentile share between 0 and 100
+     * @return long highest value of the bucket the percentile falls in, never above the maximum
+     */
+    public long getPercentile(double percentile){
+        long[] merged = new long[BUCKETS];
+        long count = 0;
+        for(int i = 0; i < counts.length(); i++){
+            long bucketCount = counts.get(i);
+            merged[i % BUCKETS] += bucketCount;
+            count += bucketCount;
+        }
+        if(count == 0){
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(count * Math.min(100, Math.max(0, percentile)) / 100));
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            seen += merged[bucket];
+            if(seen >= rank){
+                return Math.min(highest(bucket), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    /**
+     * Finds the bucket of a value: the values below SUB_BUCKETS each have their own, above that the top bit of the
+     * value picks the power of two and the SUB_BITS bits below it the bucket within it
+     */
+    private static int bucket(long value){
+        if(value < SUB_BUCKETS){
+            return (int) value;
+        }
+        int top = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (top - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (top - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Returns the highest value that falls in a bucket
+     */
+    private static long highest(int bucket){
+        if(bucket < SUB_BUCKETS){
+            return bucket;
+        }
+        int top = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        int sub = bucket % SUB_BUCKETS;
+        long lowest = (long) (SUB_BUCKETS + sub) << (top - SUB_BITS);
+        long width = 1L << (top - SUB_BITS);
+        return lowest + width - 1;
+    }
+}
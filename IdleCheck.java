@@ -0,0 +1,83 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.OperatingSystemMXBean;
+
+/**
+ * Checks that a quiescent simulation does not use the CPU. A grid of sensors is started with no fire, and the CPU
+ * time the process uses over a measuring window is compared to the wall clock time of the window.
+ *
+ * Usage: java IdleCheck [sensors] [platform|virtual|pooled] [seconds]
+ * The exit code is 1 if the process kept more than MAX_BUSY_CORES cores busy on average.
+ */
+public class IdleCheck {
+
+    //average number of cores a quiescent graph is allowed to keep busy
+    private static final double MAX_BUSY_CORES = 0.05;
+
+    public static void main(String[] args) throws InterruptedException {
+        int sensors = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        Scheduler.Mode mode = args.length > 1 ? Scheduler.parseMode(args[1]) : Scheduler.Mode.PLATFORM_THREADS;
+        int seconds = args.length > 2 ? Integer.parseInt(args[2]) : 5;
+
+        Graph graph = grid(sensors);
+        Scheduler scheduler = new Scheduler(mode);
+        graph.startThreadsForAllSensors(scheduler);
+
+        //let every thread reach its first wait before measuring
+        Thread.sleep(2000);
+
+        double busyCores = busyCores(seconds * 1000L);
+        System.out.printf("%d sensors, %s: %.4f cores busy while idle (limit %.2f)%n",
+                graph.getSizeOfGraph(), mode, busyCores, MAX_BUSY_CORES);
+        System.exit(busyCores <= MAX_BUSY_CORES ? 0 : 1);
+    }
+
+    /**
+     * Measures the average number of cores the process keeps busy over a window
+     * @param windowMillis length of the window in milliseconds
+     * @return CPU time used divided by the wall clock time of the window
+     * @throws InterruptedException if interrupted while waiting
+     */
+    static double busyCores(long windowMillis) throws InterruptedException {
+        long cpuStart = processCpuTime();
+        long wallStart = System.nanoTime();
+        Thread.sleep(windowMillis);
+        long cpu = processCpuTime() - cpuStart;
+        long wall = System.nanoTime() - wallStart;
+        return cpu / (double) wall;
+    }
+
+    private static long processCpuTime(){
+        OperatingSystemMXBean bean = ManagementFactory.getOperatingSystemMXBean();
+        if(bean instanceof com.sun.management.OperatingSystemMXBean){
+            return ((com.sun.management.OperatingSystemMXBean) bean).getProcessCpuTime();
+        }
+        throw new IllegalStateException("Process CPU time is not available on this JVM");
+    }
+
+    /**
+     * Builds a square grid with roughly the given number of sensors, each one joined to its right and lower neighbor
+     * @param sensors number of sensors wanted
+     * @return frozen Graph of the grid
+     */
+    private static Graph grid(int sensors){
+        int side = (int) Math.ceil(Math.sqrt(sensors));
+        Graph graph = new Graph();
+        for(int y = 0; y < side; y++){
+            for(int x = 0; x < side; x++){
+                graph.addSensor(new Sensor(x, y));
+            }
+        }
+        for(int y = 0; y < side; y++){
+            for(int x = 0; x < side; x++){
+                if(x + 1 < side){
+                    graph.addEdge(graph.findSensor(x, y), graph.findSensor(x + 1, y));
+                }
+                if(y + 1 < side){
+                    graph.addEdge(graph.findSensor(x, y), graph.findSensor(x, y + 1));
+                }
+            }
+        }
+        graph.freeze();
+        return graph;
+    }
+}
@@ -0,0 +1,70 @@
+import java.util.Arrays;
+
+/**
+ * Growable list of primitive ints, used while loading so that records and edges are not boxed
+ */
+class IntList {
+
+    private int[] values;
+    private int size = 0;
+
+    /**
+     * Creates an empty list
+     */
+    IntList(){
+        this.values = new int[1024];
+    }
+
+    /**
+     * Adds a value to the end of the list
+     * @param value int to add
+     */
+    void add(int value){
+        if(size == values.length){
+            values = Arrays.copyOf(values, size * 2);
+        }
+        values[size++] = value;
+    }
+
+    /**
+     * Retrieves the value at the given position
+     * @param index position in the list
+     * @return int at that position
+     */
+    int get(int index){
+        return values[index];
+    }
+
+    /**
+     * Replaces the value at the given position
+     * @param index position in the list
+     * @param value new int for that position
+     */
+    void set(int index, int value){
+        values[index] = value;
+    }
+
+    /**
+     * Drops every value from the given position to the end of the list
+     * @param size new size of the list
+     */
+    void truncate(int size){
+        this.size = Math.min(this.size, size);
+    }
+
+    /**
+     * Returns the number of values in the list
+     * @return int size
+     */
+    int size(){
+        return size;
+    }
+
+    /**
+     * Copies the values into an array of their own
+     * @return int[] with the values of the list, in order
+     */
+    int[] toArray(){
+        return Arrays.copyOf(values, size);
+    }
+}
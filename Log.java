@@ -0,0 +1,358 @@
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Leveled, asynchronous log of what the Sensors, Agents and Graph do, written one record per line so it can be read
+ * by a program as well as a person:
+ *
+ *     time=267000000 level=debug sensor=12 event=fire.spread to=17
+ *
+ * The time is the Scheduler time in nanoseconds, virtual time on the discrete event mode, and is left out along with
+ * the sensor when the record has none. A record has at most one more key and value after its event.
+ *
+ * Logging a record does no formatting and no I/O: the fields go into a slot of a ring buffer and a background thread
+ * turns them into text and writes them out in batches. Threads claim slots with a compare and set, so nothing is
+ * locked, and if the writer falls CAPACITY records behind new records are dropped and counted rather than blocking
+ * the simulation. A record below the level costs a single comparison, so the values passed should be ones the caller
+ * already has: a key and a long, or an object that is only turned into text by the writer and must not change
+ * afterwards, such as a Message. The time is an argument too and reads the clock on the thread modes, so records on
+ * the paths every message takes are logged behind a check of isEnabled().
+ *
+ * The level starts at INFO, or the log.level system property, and the records go to System.err unless another
+ * output is set. Records still in the buffer are written out when the JVM exits.
+ */
+public final class Log {
+
+    public enum Level {
+        TRACE, DEBUG, INFO, WARN, ERROR, OFF;
+
+        /**
+         * Reads a level from its name, case does not matter
+         * @param name name of the level
+         * @return the matching Level, INFO if nothing matches
+         */
+        public static Level parse(String name){
+            for(Level level: values()){
+                if(level.name().equalsIgnoreCase(name)){
+                    return level;
+                }
+            }
+            return INFO;
+        }
+
+        @Override
+        public String toString(){
+            return name().toLowerCase();
+        }
+    }
+
+    /**
+     * Records the ring buffer holds before new ones are dropped
+     */
+    public static final int CAPACITY = 1 << 14;
+
+    private static final int MASK = CAPACITY - 1;
+    private static final Level[] LEVELS = Level.values();
+    //characters gathered before the writer prints them
+    private static final int BATCH_CHARS = 1 << 13;
+
+    private static volatile int threshold = Level.parse(System.getProperty("log.level", "info")).ordinal();
+    private static volatile PrintStream out = System.err;
+
+    //a column per field of the records, one slot per record
+    private static final byte[] levels = new byte[CAPACITY];
+    private static final long[] times = new long[CAPACITY];
+    private static final int[] sensors = new int[CAPACITY];
+    private static final String[] events = new String[CAPACITY];
+    private static final String[] keys = new String[CAPACITY];
+    private static final long[] numbers = new long[CAPACITY];
+    private static final Object[] values = new Object[CAPACITY];
+    //sequence number plus one of the record in each slot, set once its fields are written
+    private static final AtomicLongArray published = new AtomicLongArray(CAPACITY);
+
+    //next sequence number to claim, next one the writer formats, and the records written out so far
+    private static final AtomicLong head = new AtomicLong();
+    private static volatile long tail = 0;
+    private static volatile long written = 0;
+    private static final LongAdder dropped = new LongAdder();
+
+    private static volatile boolean sleeping = false;
+    private static final Thread writer;
+
+    static{
+        writer = new Thread(Log::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(Log::flush, "log-flush"));
+    }
+
+    private Log(){
+
+    }
+
+    /**
+     * Sets the lowest level that is logged
+     * @param level Level to log from, OFF for nothing
+     */
+    public static void setLevel(Level level){
+        threshold = level.ordinal();
+    }
+
+    /**
+     * Returns the lowest level that is logged
+     * @return Level logged from
+     */
+    public static Level getLevel(){
+        return LEVELS[threshold];
+    }
+
+    /**
+     * Returns true if records of the given level are logged. Worth checking before building a value only for the log
+     * @param level Level of the record
+     * @return boolean for whether the record would be logged
+     */
+    public static boolean isEnabled(Level level){
+        return level.ordinal() >= threshold;
+    }
+
+    /**
+     * Sets where the records are written
+     * @param stream PrintStream to write to, System.err unless set
+     */
+    public static void setOutput(PrintStream stream){
+        flush();
+        out = stream;
+    }
+
+    /**
+     * Returns the number of records dropped because the writer was too far behind
+     * @return long dropped records
+     */
+    public static long getDropped(){
+        return dropped.sum();
+    }
+
+    /**
+     * Waits, for a second at most, until the records logged so far are written out
+     */
+    public static void flush(){
+        long target = head.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(1);
+        while(written < target && System.nanoTime() < deadline){
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MICROSECONDS.toNanos(100));
+        }
+        out.flush();
+    }
+
+    /**
+     * Logs a record with only an event
+     * @param level Level of the record
+     * @param sensor id of the Sensor, -1 for none
+     * @param time Scheduler time in nanoseconds, -1 for none
+     * @param event dotted name of what happened, a constant
+     */
+    public static void log(Level level, int sensor, long time, String event){
+        if(level.ordinal() >= threshold){
+            append(level, sensor, time, event, null, 0, null);
+        }
+    }
+
+    /**
+     * Logs a record with an event and a number
+     * @param level Level of the record
+     * @param sensor id of the Sensor, -1 for none
+     * @param time Scheduler time in nanoseconds, -1 for none
+     * @param event dotted name of what happened, a constant
+     * @param key name of the number
+     * @param number value written after the key
+     */
+    public static void log(Level level, int sensor, long time, String event, String key, long number){
+        if(level.ordinal() >= threshold){
+            append(level, sensor, time, event, key, number, null);
+        }
+    }
+
+    /**
+     * Logs a record with an event and a value, turned into text by the writer thread
+     * @param level Level of the record
+     * @param sensor id of the Sensor, -1 for none
+     * @param time Scheduler time in nanoseconds, -1 for none
+     * @param event dotted name of what happened, a constant
+     * @param key name of the value
+     * @param value value written after the key, which must not change once logged
+     */
+    public static void log(Level level, int sensor, long time, String event, String key, Object value){
+        if(level.ordinal() >= threshold){
+            append(level, sensor, time, event, key, 0, value == null ? "null" : value);
+        }
+    }
+
+    //shorthands for the levels, same arguments as log()
+
+    public static void trace(int sensor, long time, String event){
+        log(Level.TRACE, sensor, time, event);
+    }
+
+    public static void trace(int sensor, long time, String event, String key, long number){
+        log(Level.TRACE, sensor, time, event, key, number);
+    }
+
+    public static void trace(int sensor, long time, String event, String key, Object value){
+        log(Level.TRACE, sensor, time, event, key, value);
+    }
+
+    public static void debug(int sensor, long time, String event){
+        log(Level.DEBUG, sensor, time, event);
+    }
+
+    public static void debug(int sensor, long time, String event, String key, long number){
+        log(Level.DEBUG, sensor, time, event, key, number);
+    }
+
+    public static void debug(int sensor, long time, String event, String key, Object value){
+        log(Level.DEBUG, sensor, time, event, key, value);
+    }
+
+    public static void info(int sensor, long time, String event){
+        log(Level.INFO, sensor, time, event);
+    }
+
+    public static void info(int sensor, long time, String event, String key, Object value){
+        log(Level.INFO, sensor, time, event, key, value);
+    }
+
+    public static void warn(int sensor, long time, String event){
+        log(Level.WARN, sensor, time, event);
+    }
+
+    public static void warn(int sensor, long time, String event, String key, Object value){
+        log(Level.WARN, sensor, time, event, key, value);
+    }
+
+    public static void error(int sensor, long time, String event, String key, Object value){
+        log(Level.ERROR, sensor, time, event, key, value);
+    }
+
+    /**
+     * Claims the next slot of the ring buffer, fills it in and publishes it, or drops the record if the buffer is full
+     */
+    private static void append(Level level, int sensor, long time, String event, String key, long number,
+                               Object value){
+        long sequence;
+        do{
+            sequence = head.get();
+            if(sequence - tail >= CAPACITY){
+                dropped.increment();
+                return;
+            }
+        } while(!head.compareAndSet(sequence, sequence + 1));
+        int slot = (int) sequence & MASK;
+        levels[slot] = (byte) level.ordinal();
+        times[slot] = time;
+        sensors[slot] = sensor;
+        events[slot] = event;
+        keys[slot] = key;
+        numbers[slot] = number;
+        values[slot] = value;
+        published.set(slot, sequence + 1);
+        if(sleeping){
+            LockSupport.unpark(writer);
+        }
+    }
+
+    /**
+     * Body of the writer thread: formats the published records in order and prints them in batches, sleeping while
+     * there is nothing to write until a new record wakes it up
+     */
+    private static void write(){
+        StringBuilder text = new StringBuilder(BATCH_CHARS * 2);
+        long reported = 0;
+        while(true){
+            long sequence = tail;
+            int slot = (int) sequence & MASK;
+            if(published.get(slot) == sequence + 1){
+                format(text, slot);
+                values[slot] = null;
+                tail = sequence + 1;
+                if(text.length() >= BATCH_CHARS){
+                    print(text, sequence + 1);
+                }
+                continue;
+            }
+            long lost = dropped.sum();
+            if(lost != reported){
+                text.append("level=warn event=log.dropped records=").append(lost - reported).append('\n');
+                reported = lost;
+            }
+            if(text.length() > 0){
+                print(text, sequence);
+            }
+            else{
+                written = sequence;
+            }
+            sleeping = true;
+            if(published.get(slot) != sequence + 1){
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            }
+            sleeping = false;
+        }
+    }
+
+    private static void print(StringBuilder text, long upTo){
+        PrintStream stream = out;
+        stream.print(text);
+        stream.flush();
+        text.setLength(0);
+        written = upTo;
+    }
+
+    private static void format(StringBuilder text, int slot){
+        if(times[slot] >= 0){
+            text.append("time=").append(times[slot]).append(' ');
+        }
+        text.append("level=").append(LEVELS[levels[slot]]);
+        if(sensors[slot] >= 0){
+            text.append(" sensor=").append(sensors[slot]);
+        }
+        text.append(" event=").append(events[slot]);
+        if(keys[slot] != null){
+            text.append(' ').append(keys[slot]).append('=');
+            if(values[slot] == null){
+                text.append(numbers[slot]);
+            }
+            else{
+                quote(text, String.valueOf(values[slot]));
+            }
+        }
+        text.append('\n');
+    }
+
+    /**
+     * Appends a value, in double quotes if it has spaces, quotes or equal signs in it so the line can still be split
+     */
+    private static void quote(StringBuilder text, String value){
+        boolean plain = !value.isEmpty();
+        for(int i = 0; i < value.length() && plain; i++){
+            char c = value.charAt(i);
+            plain = c > ' ' && c != '"' && c != '=';
+        }
+        if(plain){
+            text.append(value);
+            return;
+        }
+        text.append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\'){
+                text.append('\\');
+            }
+            text.append(c == '\n' ? ' ' : c);
+        }
+        text.append('"');
+    }
+}
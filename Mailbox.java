@@ -0,0 +1,368 @@
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Queue of messages for a Sensor or an Agent. Its owner can register a listener that is told whenever a message is
+ * put in, which is how pooled Sensors and Agents are woken up instead of having a thread of their own waiting on the
+ * queue.
+ *
+ * Senders never block. When the Mailbox already holds its capacity of messages the overflow Policy decides what
+ * happens to a new one, so a Sensor sending to a busy neighbor carries on with its own work instead of waiting while
+ * the neighbor may be waiting on it in turn. The owner is the only one taking messages out, and it can still wait
+ * for one to come in. Messages that do not fit wait in an overflow queue of the same capacity at most, so a Mailbox
+ * never holds more than twice its capacity, and once that is full too new messages are dropped.
+ *
+ * The Mailbox counts the messages it dropped, coalesced and spilled, and the largest number of messages it held.
+ * @param <E> type of the messages
+ */
+public class Mailbox<E> {
+
+    /**
+     * What a full Mailbox does with a new message
+     */
+    public enum Policy {
+        /**
+         * The message at the head of the Mailbox is dropped to make room for the new one
+         */
+        DROP_OLDEST,
+        /**
+         * A message with the same coalescing key as one already waiting is merged into it, so repeated alerts collapse
+         * into one. Other messages that do not fit are spilled
+         */
+        COALESCE,
+        /**
+         * Messages that do not fit wait in the overflow queue and move into the Mailbox as it drains, in the order
+         * they came in
+         */
+        SPILL;
+
+        /**
+         * Finds the Policy with the given name, ignoring case and dashes
+         * @param name name of the Policy, such as drop-oldest
+         * @return the Policy
+         */
+        public static Policy parse(String name){
+            return valueOf(name.trim().toUpperCase().replace('-', '_'));
+        }
+    }
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Queue<E> queue;
+    private final int capacity;
+    private final Policy policy;
+    //messages that did not fit, at most capacity of them, only used by SPILL and COALESCE
+    private final ArrayDeque<E> overflow = new ArrayDeque<>();
+    //number of messages waiting per coalescing key, only used by COALESCE
+    private final Function<? super E, ?> coalesceKey;
+    private final HashMap<Object, Integer> waiting;
+
+    private volatile Runnable listener = null;
+
+    private long dropped = 0;
+    private long coalesced = 0;
+    private long spilled = 0;
+    private int maxDepth = 0;
+
+    /**
+     * Creates a Mailbox with no limit on the number of messages
+     * @param queue empty Queue holding the messages, which decides the order they are taken in
+     */
+    public Mailbox(Queue<E> queue){
+        this(queue, Integer.MAX_VALUE, Policy.SPILL);
+    }
+
+    /**
+     * Creates a Mailbox holding up to the given number of messages, which only coalesces equal messages
+     * @param queue empty Queue holding the messages, which decides the order they are taken in
+     * @param capacity number of messages the Mailbox holds before its Policy applies
+     * @param policy what to do with a message once the Mailbox is full
+     */
+    public Mailbox(Queue<E> queue, int capacity, Policy policy){
+        this(queue, capacity, policy, message -> message);
+    }
+
+    /**
+     * Creates a Mailbox holding up to the given number of messages
+     * @param queue empty Queue holding the messages, which decides the order they are taken in
+     * @param capacity number of messages the Mailbox holds before its Policy applies
+     * @param policy what to do with a message once the Mailbox is full
+     * @param coalesceKey gives the key of a message, COALESCE merges a message into a waiting one with an equal key
+     */
+    public Mailbox(Queue<E> queue, int capacity, Policy policy, Function<? super E, ?> coalesceKey){
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        this.queue = queue;
+        this.capacity = capacity;
+        this.policy = policy;
+        this.coalesceKey = coalesceKey;
+        this.waiting = policy == Policy.COALESCE ? new HashMap<>() : null;
+    }
+
+    /**
+     * Sets the listener called after every message that is put in the Mailbox
+     * @param listener Runnable to call, or null for none
+     */
+    public void setListener(Runnable listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Puts a message in the Mailbox without waiting. If the Mailbox is full the message is handled by the Policy
+     * @param message message to add
+     * @return true if the message was added or spilled, false if it was coalesced into a waiting one or dropped
+     * because the overflow queue is full too. A message that pushes out the oldest one counts as added
+     */
+    public boolean offer(E message){
+        lock.lock();
+        try{
+            if(queue.size() >= capacity || !overflow.isEmpty()){
+                if(policy == Policy.DROP_OLDEST){
+                    forget(queue.poll());
+                    dropped++;
+                    queue.offer(message);
+                }
+                else if(waiting != null && waiting.containsKey(coalesceKey.apply(message))){
+                    coalesced++;
+                    return false;
+                }
+                else if(overflow.size() >= capacity){
+                    dropped++;
+                    return false;
+                }
+                else{
+                    overflow.offer(message);
+                    spilled++;
+                }
+            }
+            else{
+                queue.offer(message);
+            }
+            if(waiting != null){
+                waiting.merge(coalesceKey.apply(message), 1, Integer::sum);
+            }
+            maxDepth = Math.max(maxDepth, queue.size() + overflow.size());
+            notEmpty.signal();
+        }
+        finally{
+            lock.unlock();
+        }
+        notifyListener();
+        return true;
+    }
+
+    /**
+     * Takes the next message, waiting for one if the Mailbox is empty
+     * @return the next message
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try{
+            while(queue.isEmpty()){
+                notEmpty.await();
+            }
+            return next();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next message if there is one
+     * @return the next message, or null if the Mailbox is empty
+     */
+    public E poll(){
+        lock.lock();
+        try{
+            return queue.isEmpty() ? null : next();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the next message, waiting up to the given time for one
+     * @param timeout how long to wait
+     * @param unit unit of the timeout
+     * @return the next message, or null if none came in time
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try{
+            while(queue.isEmpty()){
+                if(nanos <= 0){
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return next();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns true if there are no messages waiting
+     * @return boolean for whether the Mailbox is empty
+     */
+    public boolean isEmpty(){
+        return size() == 0;
+    }
+
+    /**
+     * Returns the number of messages waiting, the spilled ones included
+     * @return int depth of the Mailbox
+     */
+    public int size(){
+        lock.lock();
+        try{
+            return queue.size() + overflow.size();
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages the Mailbox holds before its Policy applies
+     * @return int capacity
+     */
+    public int getCapacity(){
+        return this.capacity;
+    }
+
+    /**
+     * Returns what the Mailbox does with a message once it is full
+     * @return Policy of the Mailbox
+     */
+    public Policy getPolicy(){
+        return this.policy;
+    }
+
+    /**
+     * Returns the number of messages pushed out to make room for newer ones, or dropped because the overflow queue
+     * was full
+     * @return long number of dropped messages
+     */
+    public long getDropped(){
+        lock.lock();
+        try{
+            return dropped;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages merged into one with the same key already waiting
+     * @return long number of coalesced messages
+     */
+    public long getCoalesced(){
+        lock.lock();
+        try{
+            return coalesced;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the number of messages that had to wait in the overflow queue
+     * @return long number of spilled messages
+     */
+    public long getSpilled(){
+        lock.lock();
+        try{
+            return spilled;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns the largest number of messages the Mailbox has held at once
+     * @return int highest depth
+     */
+    public int getMaxDepth(){
+        lock.lock();
+        try{
+            return maxDepth;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Copies the waiting messages without taking them, in the order they would be taken
+     * @return List of the messages in the Mailbox
+     */
+    @SuppressWarnings("unchecked")
+    public List<E> contents(){
+        lock.lock();
+        try{
+            List<E> messages = new ArrayList<>(queue.size() + overflow.size());
+            if(queue instanceof PriorityQueue){
+                PriorityQueue<E> copy = new PriorityQueue<>((PriorityQueue<E>) queue);
+                while(!copy.isEmpty()){
+                    messages.add(copy.poll());
+                }
+            }
+            else{
+                messages.addAll(queue);
+            }
+            messages.addAll(overflow);
+            return messages;
+        }
+        finally{
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the head of the queue and moves a spilled message into the space it leaves. Called with the lock held
+     */
+    private E next(){
+        E message = queue.poll();
+        forget(message);
+        if(!overflow.isEmpty()){
+            queue.offer(overflow.poll());
+        }
+        return message;
+    }
+
+    /**
+     * Stops counting a message that left the Mailbox among those waiting. Called with the lock held
+     */
+    private void forget(E message){
+        if(waiting != null && message != null){
+            waiting.computeIfPresent(coalesceKey.apply(message), (key, count) -> count == 1 ? null : count - 1);
+        }
+    }
+
+    private void notifyListener(){
+        Runnable toCall = listener;
+        if(toCall != null){
+            toCall.run();
+        }
+    }
+}
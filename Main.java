@@ -1,16 +1,21 @@
 import java.io.*;
 import java.util.*;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.PriorityBlockingQueue;
 
 public class Main {
 
     private static String inputFileName;
     private Graph graph = new Graph();
     private List<String> args;
-    //event log used specifically for the playback. This log does NOT affect the simulation
-    private Queue<String> eventLog = new LinkedList<>();
+    //trace of the run used specifically for the playback. Recording it does NOT affect the simulation
+    private Trace trace = null;
+    private File traceFile = null;
+    private boolean replay = false;
     private Timer timer = new Timer();
+    private Scheduler scheduler;
+    //the metrics of the run are appended to this file every DUMP_MILLIS, and can be read over JMX meanwhile
+    private static final File METRICS_FILE = new File("metrics.txt");
+    private static final long DUMP_MILLIS = 10000;
+    private PrintStream metricsOut = null;
 
 
     public Main(List<String> args){
@@ -19,167 +24,126 @@ public class Main {
     }
 
     private void doStuff(){
-        BaseStation baseStation;
-        List<Sensor> sensors = new ArrayList<>();
-
         if(args.size() > 0){
             inputFileName = args.get(0);
         }
+        //the optional second argument picks how sensors and agents are run: platform, virtual or pooled
+        Scheduler.Mode mode = Scheduler.Mode.PLATFORM_THREADS;
+        if(args.size() > 1){
+            mode = Scheduler.parseMode(args.get(1));
+        }
+        if(mode == Scheduler.Mode.DISCRETE_EVENT){
+            //virtual time is for headless runs, see Simulation
+            System.err.println("The discrete event mode only runs headless, using pooled");
+            mode = Scheduler.Mode.POOLED;
+        }
+        //the optional fourth and fifth arguments record the run to a trace file or play one back
+        if(args.size() > 4){
+            traceFile = new File(args.get(4));
+            replay = args.get(3).equalsIgnoreCase("replay");
+        }
 
-        Stack<Integer> sensorsToCreate = new Stack<>();
-        Stack<Integer> edgesToCreate = new Stack<>();
-        int[] baseStationNode = new int[2];
-        int[] fireStart = new int[2];
-
+        ConfigLoader loader = new ConfigLoader();
         try{
-
-            File file = new File(inputFileName);
-
-            BufferedReader bufferedReader = new BufferedReader(new FileReader(file));
-
-            String st;
-            while ((st = bufferedReader.readLine()) != null) {
-
-                if(st.charAt(0) == 'n'){
-                    List<Integer> numbers = parseLine(st.substring(5));
-                    sensorsToCreate.push(numbers.get(0));
-                    sensorsToCreate.push(numbers.get(1));
-                }
-                else if(st.charAt(0) == 'e'){
-                    List<Integer> numbers = parseLine(st.substring(5));
-                    for(int i = 0; i < numbers.size(); i++){
-                        edgesToCreate.push(numbers.get(i));
-                    }
-                }
-                else if(st.charAt(0) == 's'){
-                    List<Integer> numbers = parseLine(st.substring(8));
-                    baseStationNode[0] = numbers.get(0);
-                    baseStationNode[1] = numbers.get(1);
-                }
-                else if(st.charAt(0) == 'f'){
-                    List<Integer> numbers = parseLine(st.substring(5));
-                    fireStart[0] = numbers.get(0);
-                    fireStart[1] = numbers.get(1);
-                }
-            }
-
-
+            loader.load(inputFileName, graph);
         } catch(IOException io){
             System.err.println(io);
         }
-
-        //Graph graph = new Graph();
-
-        //pop y then pop x
-        //random agent with crazy values so we know if something went wrong
-        Agent agent = new Agent("-100", new Sensor(0, 0), false);
-        int num = sensorsToCreate.size();
-        for(int i = 0; i < num; i+= 2){
-            int y = sensorsToCreate.pop();
-            int x = sensorsToCreate.pop();
-
-            Sensor sensor;
-
-            if(x == baseStationNode[0] && y == baseStationNode[1]){
-                baseStation = new BaseStation(x, y);
-                sensor = baseStation;
-                //graph.addSensor(sensor);
-                agent = new Agent("1", sensor, false);
-                sensor.agentMove(agent);
-                sensors.add(sensor);
-            }
-            else{
-                sensor = new Sensor(x, y);
-                sensors.add(sensor);
-            }
-
-            /*if(x == fireStart[0] && y == fireStart[1]){
-                sensor.setStatus("fire");
-            }*/
-        }
-
-        for(Sensor s : sensors){
-            graph.addSensor(s);
+        if(replay){
+            //the Display plays the trace back, nothing is run
+            return;
         }
-
-        //graph.adjSensors.keySet().stream().forEach(e -> System.out.println(e.getCoordinates()));
-
-        num = edgesToCreate.size();
-        for(int i = 0; i < num; i += 4){
-            int y2 = edgesToCreate.pop();
-            int x2 = edgesToCreate.pop();
-            int y1 = edgesToCreate.pop();
-            int x1 = edgesToCreate.pop();
-
-            Sensor sensor1 = new Sensor(-1, -1);
-            Sensor sensor2 = new Sensor(-1, -1);
-            for(Sensor sensor : sensors){
-                String coord = sensor.getCoordinates();
-                if(coord.equals(x1 + " " + y1)){
-                    sensor1 = sensor;
-                }
-                else if(coord.equals(x2 + " " + y2)){
-                    sensor2 = sensor;
-                }
-                else{
-                    //do nothing
-                }
+        scheduler = new Scheduler(mode);
+        startMetrics(mode);
+        if(traceFile != null){
+            try{
+                trace = new Trace(traceFile, scheduler, graph.getSizeOfGraph());
+                trace.recordState(graph);
+                graph.setTrace(trace);
+            } catch(IOException io){
+                System.err.println(io);
             }
+        }
 
-            //System.out.println(sensor1.getCoordinates() + " " + sensor2.getCoordinates());
-
-            graph.addEdge(sensor1, sensor2);
+        //random agent with crazy values so we know if something went wrong
+        Agent agent = loader.getAgent();
+        if(agent == null){
+            agent = new Agent("-100", new Sensor(0, 0), false);
         }
+        int[] fireStart = loader.getFireStart();
 
         //start simulation
-        //Graph simulationGraph = graph;
-        //simulationGraph.startThreadsForAllSensors();
-        graph.startThreadsForAllSensors();
+        graph.startThreadsForAllSensors(scheduler);
         //start agent thread
-        new Thread(agent).start();
+        scheduler.start(agent);
 
         //start the fire
         Sensor start = graph.getSensor(fireStart[0], fireStart[1]);
-        try{
-            start.getQ().put("fire");
-        } catch (InterruptedException e){
-            e.printStackTrace();
-        }
+        start.getQ().offer(Message.FIRE);
 
         //return log for base station when it catches on fire
-            //graph.getBaseStation().getLog()
+            //((BaseStation) graph.getBaseStation()).getRecentLog()
 
     }
 
+    /**
+     * Registers the Metrics of the run with JMX and dumps them to METRICS_FILE on the timer
+     * @param mode mode of the Scheduler, names the run over JMX
+     */
+    private void startMetrics(Scheduler.Mode mode){
+        Metrics metrics = scheduler.getMetrics();
+        metrics.register(mode.toString().toLowerCase());
+        try{
+            metricsOut = new PrintStream(new FileOutputStream(METRICS_FILE, true));
+        } catch(IOException io){
+            System.err.println(io);
+            return;
+        }
+        timer.schedule(new TimerTask() {
+            public void run(){
+                metrics.dump(metricsOut);
+            }
+        }, DUMP_MILLIS, DUMP_MILLIS);
+    }
 
+    public Graph getGraph(){
+        return this.graph;
+    }
 
     /**
-     * This static method is used in the main method in order to parse the configuration files to return a list of integers
-     * @param s the string with just integers and spaces
-     * @return the list of integers in the order they appear on the string
+     * Returns true if the arguments ask for a trace to be played back instead of a run
+     * @return boolean for whether this is a replay
      */
-    private static List<Integer> parseLine(String s){
+    public boolean isReplay(){
+        return this.replay;
+    }
 
-        List<Integer> list = new ArrayList<>();
+    /**
+     * Retrieves the trace file given in the arguments
+     * @return File of the trace, or null if none was given
+     */
+    public File getTraceFile(){
+        return this.traceFile;
+    }
 
-        String integerToAdd = "";
-        for(int i = 0; i < s.length(); i++){
-            if(s.charAt(i) == ' '){
-                list.add(Integer.parseInt(integerToAdd));
-                integerToAdd = "";
-            }
-            else{
-                integerToAdd += s.charAt(i);
-                if(i == s.length() - 1){
-                    list.add(Integer.parseInt(integerToAdd));
-                }
+    /**
+     * Writes out the rest of the trace, if the run is recorded, and the metrics one last time, and deletes the file
+     * of the base station log. Called when the window closes
+     */
+    public void close(){
+        if(trace != null){
+            trace.close();
+        }
+        if(graph.getBaseStation() instanceof BaseStation){
+            ((BaseStation) graph.getBaseStation()).getEventLog().close();
+        }
+        timer.cancel();
+        if(scheduler != null){
+            if(metricsOut != null){
+                scheduler.getMetrics().dump(metricsOut);
+                metricsOut.close();
             }
+            scheduler.getMetrics().unregister();
         }
-
-        return list;
-    }
-
-    public Graph getGraph(){
-        return this.graph;
     }
 }
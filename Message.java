@@ -0,0 +1,159 @@
+/**
+ * A message passed between Sensors, and from Sensors to the Base Station log.
+ *
+ * Messages are immutable, so a relayed message is the same object on every hop and nothing is allocated or compared
+ * character by character along the way. Messages that only carry their type are shared constants. The text that
+ * ends up in the Base Station log is only built when the log is read.
+ */
+public final class Message {
+
+    /**
+     * What a message means. The order matters: Agents keep the types in a priority queue and handle an alert before
+     * a fire, the same way the "alert" and "fire" strings used to sort.
+     */
+    public enum Type {
+        ALERT, FIRE, DEAD, AGENT_CREATED
+    }
+
+    public static final Message ALERT = new Message(Type.ALERT, -1, 0, 0, null);
+    public static final Message FIRE = new Message(Type.FIRE, -1, 0, 0, null);
+    public static final Message DEAD = new Message(Type.DEAD, -1, 0, 0, null);
+
+    private final Type type;
+    //id of the Sensor the message started from, -1 for the shared constants
+    private final int source;
+    //number given by the source Sensor, the pair source and sequence tells relayed messages apart
+    private final int sequence;
+    //meaning depends on the type, the Scheduler time in nanoseconds for AGENT_CREATED
+    private final long payload;
+    //id of the Agent for AGENT_CREATED, copied since Agents are recycled once their Sensor burns
+    private final String agentId;
+
+    private Message(Type type, int source, int sequence, long payload, String agentId){
+        this.type = type;
+        this.source = source;
+        this.sequence = sequence;
+        this.payload = payload;
+        this.agentId = agentId;
+    }
+
+    /**
+     * Creates the message sent to the Base Station when an Agent is copied onto a Sensor
+     * @param sensor Sensor the Agent was created on
+     * @param agent the new Agent
+     * @param time Scheduler time of the creation in nanoseconds
+     * @return Message of type AGENT_CREATED
+     */
+    public static Message agentCreated(Sensor sensor, Agent agent, long time){
+        return new Message(Type.AGENT_CREATED, sensor.getId(), sensor.nextSequence(), time,
+                agent.getAgentId());
+    }
+
+    /**
+     * Rebuilds a message read back from the Base Station EventLog
+     * @param type type of the message
+     * @param source id of the Sensor the message started from
+     * @param sequence number the source Sensor gave the message
+     * @param payload numeric payload of the message
+     * @param agentId id of the Agent for AGENT_CREATED, null otherwise
+     * @return the Message, the shared constant for messages that only carry their type
+     */
+    static Message restore(Type type, int source, int sequence, long payload, String agentId){
+        if(source == -1 && agentId == null){
+            switch(type){
+                case ALERT:
+                    return ALERT;
+                case FIRE:
+                    return FIRE;
+                case DEAD:
+                    return DEAD;
+                default:
+            }
+        }
+        return new Message(type, source, sequence, payload, agentId);
+    }
+
+    /**
+     * Retrieves the type of the message
+     * @return Type of the message
+     */
+    public Type getType(){
+        return this.type;
+    }
+
+    /**
+     * Retrieves the id of the Sensor the message started from
+     * @return int Sensor id, -1 for the shared constants
+     */
+    public int getSource(){
+        return this.source;
+    }
+
+    /**
+     * Retrieves the number the source Sensor gave the message
+     * @return int sequence number
+     */
+    public int getSequence(){
+        return this.sequence;
+    }
+
+    /**
+     * Retrieves the numeric payload of the message
+     * @return long payload, the Scheduler time of the creation for AGENT_CREATED
+     */
+    public long getPayload(){
+        return this.payload;
+    }
+
+    /**
+     * Retrieves the id of the Agent an AGENT_CREATED message is about
+     * @return String Agent id, or null for other types
+     */
+    public String getAgentId(){
+        return this.agentId;
+    }
+
+    /**
+     * Builds the text of the message for the Base Station log
+     * @param origin the Sensor the message started from
+     * @return String describing the message
+     */
+    public String describe(Sensor origin){
+        if(type == Type.AGENT_CREATED){
+            return "Agent " + agentId + " created at Sensor (" + origin.getX() + ", " + origin.getY() + ")";
+        }
+        return type.name().toLowerCase();
+    }
+
+    /**
+     * Returns the key a COALESCE Mailbox merges messages by. A Sensor only moves forward through its Status, so an
+     * alert, fire or dead message waiting behind one of the same type changes nothing and the type is the key. Every
+     * AGENT_CREATED message is an entry of the log of its own, so it is its own key
+     * @return Object equal for messages that are redundant with each other
+     */
+    public Object coalesceKey(){
+        return type == Type.AGENT_CREATED ? this : type;
+    }
+
+    @Override
+    public boolean equals(Object other){
+        if(this == other){
+            return true;
+        }
+        if(!(other instanceof Message)){
+            return false;
+        }
+        Message message = (Message) other;
+        return type == message.type && source == message.source && sequence == message.sequence;
+    }
+
+    @Override
+    public int hashCode(){
+        return (type.ordinal() * 31 + source) * 31 + sequence;
+    }
+
+    @Override
+    public String toString(){
+        return type + " " + source + ":" + sequence;
+    }
+}
@@ -0,0 +1,307 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import javax.management.Attribute;
+import javax.management.AttributeList;
+import javax.management.AttributeNotFoundException;
+import javax.management.DynamicMBean;
+import javax.management.JMException;
+import javax.management.MBeanAttributeInfo;
+import javax.management.MBeanInfo;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters, gauges and histograms of one run, kept by its Scheduler.
+ *
+ * Counters are LongAdders, which spread the increments of different threads over separate cells, and histograms are
+ * striped the same way, so recording from the hot paths of the Sensors and Agents costs a few nanoseconds and no
+ * lock. Gauges are read from where the value already lives, such as the AgentPool, only when the metrics are read.
+ *
+ * The Sensors record the messages sent and handled per Message.Type, the messages they handle each time they wake
+ * up, the size of the fire front, the Sensors burning right now, and how long an AGENT_CREATED message took to reach
+ * the Base Station log, in the time of the Scheduler so in virtual time on the discrete event mode. Every Mailbox
+ * keeps its own highest depth, which the Metrics read from the Sensors they watch: the deepest of all is a gauge and
+ * dump() also lists the Sensors with the deepest Mailboxes.
+ *
+ * Every metric has a dotted name. A histogram shows up as several values, its count, mean, percentiles and max.
+ * The values can be printed as text with dump() and read over JMX once the Metrics are registered, for example with
+ * jconsole under the sensors domain.
+ */
+public class Metrics implements DynamicMBean {
+
+    /**
+     * JMX domain the Metrics are registered under
+     */
+    public static final String DOMAIN = "sensors";
+
+    private static final Message.Type[] TYPES = Message.Type.values();
+    private static final double[] PERCENTILES = {50, 90, 99};
+    //Sensors dump() lists by the highest depth of their Mailbox
+    private static final int DEEPEST_MAILBOXES = 10;
+
+    private final Map<String, LongAdder> counters = new ConcurrentHashMap<>();
+    private final Map<String, LongSupplier> gauges = new ConcurrentHashMap<>();
+    private final Map<String, Histogram> histograms = new ConcurrentHashMap<>();
+
+    //built in metrics, held in fields so the hot paths do not look them up
+    private final LongAdder[] sent = new LongAdder[TYPES.length];
+    private final LongAdder[] received = new LongAdder[TYPES.length];
+    private final LongAdder fireFront;
+    private final Histogram mailboxDrained;
+    private final Histogram baseStationLatency;
+
+    private volatile Collection<Sensor> sensors = Collections.emptyList();
+    private ObjectName registered = null;
+
+    /**
+     * Creates the Metrics of a run with the built in metrics at 0
+     */
+    public Metrics(){
+        for(Message.Type type: TYPES){
+            String name = type.name().toLowerCase();
+            sent[type.ordinal()] = counter("messages.sent." + name);
+            received[type.ordinal()] = counter("messages.received." + name);
+        }
+        fireFront = counter("fire.front");
+        mailboxDrained = histogram("mailbox.drained");
+        baseStationLatency = histogram("basestation.latency.nanos");
+        gauge("mailbox.depth.max", () -> {
+            int deepest = 0;
+            for(Sensor sensor: sensors){
+                deepest = Math.max(deepest, sensor.getQ().getMaxDepth());
+            }
+            return deepest;
+        });
+    }
+
+    /**
+     * Returns the counter with the given name, created at 0 the first time
+     * @param name dotted name of the counter
+     * @return LongAdder of the counter
+     */
+    public LongAdder counter(String name){
+        return counters.computeIfAbsent(name, key -> new LongAdder());
+    }
+
+    /**
+     * Returns the histogram with the given name, created empty the first time
+     * @param name dotted name of the histogram
+     * @return Histogram to record into
+     */
+    public Histogram histogram(String name){
+        return histograms.computeIfAbsent(name, key -> new Histogram());
+    }
+
+    /**
+     * Adds a gauge, a value read from elsewhere whenever the metrics are read. Replaces a gauge with the same name
+     * @param name dotted name of the gauge
+     * @param gauge reads the current value, from any thread
+     */
+    public void gauge(String name, LongSupplier gauge){
+        gauges.put(name, gauge);
+    }
+
+    /**
+     * Counts a message a Sensor sent to another
+     * @param type Type of the message
+     */
+    public void messageSent(Message.Type type){
+        sent[type.ordinal()].increment();
+    }
+
+    /**
+     * Counts a message a Sensor took from its Mailbox
+     * @param type Type of the message
+     */
+    public void messageReceived(Message.Type type){
+        received[type.ordinal()].increment();
+    }
+
+    /**
+     * Watches the Mailboxes of the Sensors of a run. Their depth is only read when the metrics are read
+     * @param sensors Sensors to watch, which must not change afterwards
+     */
+    public void watchMailboxes(Collection<Sensor> sensors){
+        this.sensors = sensors;
+    }
+
+    /**
+     * Records the number of messages a Sensor handled in one go after it woke up
+     * @param messages messages taken from the Mailbox before it was empty
+     */
+    public void mailboxDrained(int messages){
+        mailboxDrained.record(messages);
+    }
+
+    /**
+     * Records how long a message took from its creation to the Base Station log
+     * @param nanos Scheduler time between the two
+     */
+    public void reachedBaseStation(long nanos){
+        baseStationLatency.record(nanos);
+    }
+
+    /**
+     * Changes the number of Sensors on fire
+     * @param delta 1 when a Sensor catches on fire, -1 when a burning one dies
+     */
+    public void fireFrontChanged(int delta){
+        fireFront.add(delta);
+    }
+
+    /**
+     * Reads every metric at once, the histograms split into their count, mean, percentiles and max
+     * @return Map from metric name to value, sorted by name
+     */
+    public Map<String, Long> snapshot(){
+        Map<String, Long> values = new TreeMap<>();
+        for(Map.Entry<String, LongAdder> counter: counters.entrySet()){
+            values.put(counter.getKey(), counter.getValue().sum());
+        }
+        for(Map.Entry<String, LongSupplier> gauge: gauges.entrySet()){
+            values.put(gauge.getKey(), gauge.getValue().getAsLong());
+        }
+        for(Map.Entry<String, Histogram> entry: histograms.entrySet()){
+            String name = entry.getKey();
+            Histogram histogram = entry.getValue();
+            values.put(name + ".count", histogram.getCount());
+            values.put(name + ".mean", Math.round(histogram.getMean()));
+            for(double percentile: PERCENTILES){
+                values.put(name + ".p" + (int) percentile, histogram.getPercentile(percentile));
+            }
+            values.put(name + ".max", histogram.getMax());
+        }
+        return values;
+    }
+
+    /**
+     * Prints every metric, one "name value" line each, after a line with the wall clock time. The Sensors with the
+     * deepest Mailboxes follow, deepest first, as mailbox.depth.max.sensor.<id> lines
+     * @param out where to print
+     */
+    public void dump(PrintStream out){
+        StringBuilder text = new StringBuilder();
+        text.append("# metrics ").append(System.currentTimeMillis()).append('\n');
+        for(Map.Entry<String, Long> value: snapshot().entrySet()){
+            text.append(value.getKey()).append(' ').append(value.getValue()).append('\n');
+        }
+        for(int[] mailbox: deepestMailboxes()){
+            text.append("mailbox.depth.max.sensor.").append(mailbox[0]).append(' ').append(mailbox[1]).append('\n');
+        }
+        out.print(text);
+        out.flush();
+    }
+
+    /**
+     * Finds the DEEPEST_MAILBOXES Sensors whose Mailbox held the most messages at once
+     * @return List of the id and highest depth of each, deepest first
+     */
+    private List<int[]> deepestMailboxes(){
+        PriorityQueue<int[]> deepest = new PriorityQueue<>(Comparator.comparingInt(mailbox -> mailbox[1]));
+        for(Sensor sensor: sensors){
+            int depth = sensor.getQ().getMaxDepth();
+            if(depth > 0){
+                deepest.offer(new int[]{sensor.getId(), depth});
+                if(deepest.size() > DEEPEST_MAILBOXES){
+                    deepest.poll();
+                }
+            }
+        }
+        List<int[]> mailboxes = new ArrayList<>(deepest);
+        mailboxes.sort(Comparator.comparingInt((int[] mailbox) -> mailbox[1]).reversed());
+        return mailboxes;
+    }
+
+    /**
+     * Registers the Metrics with the platform MBean server, where JMX clients can read them
+     * @param name name of this run among the Metrics registered, such as the Scheduler mode
+     */
+    public synchronized void register(String name){
+        unregister();
+        try{
+            ObjectName objectName = new ObjectName(DOMAIN + ":type=Metrics,name=" + ObjectName.quote(name));
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            if(server.isRegistered(objectName)){
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+            registered = objectName;
+        } catch(JMException jmx){
+            System.err.println(jmx);
+        }
+    }
+
+    /**
+     * Removes the Metrics from the platform MBean server, if they were registered
+     */
+    public synchronized void unregister(){
+        if(registered == null){
+            return;
+        }
+        try{
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registered);
+        } catch(JMException jmx){
+            System.err.println(jmx);
+        }
+        registered = null;
+    }
+
+    //read only DynamicMBean, one Long attribute per value of the snapshot
+
+    @Override
+    public Object getAttribute(String attribute) throws AttributeNotFoundException {
+        Long value = snapshot().get(attribute);
+        if(value == null){
+            throw new AttributeNotFoundException(attribute);
+        }
+        return value;
+    }
+
+    @Override
+    public AttributeList getAttributes(String[] attributes){
+        Map<String, Long> values = snapshot();
+        AttributeList list = new AttributeList();
+        for(String attribute: attributes){
+            if(values.containsKey(attribute)){
+                list.add(new Attribute(attribute, values.get(attribute)));
+            }
+        }
+        return list;
+    }
+
+    @Override
+    public void setAttribute(Attribute attribute) throws AttributeNotFoundException {
+        throw new AttributeNotFoundException("Metrics are read only: " + attribute.getName());
+    }
+
+    @Override
+    public AttributeList setAttributes(AttributeList attributes){
+        return new AttributeList();
+    }
+
+    @Override
+    public Object invoke(String action, Object[] params, String[] signature){
+        throw new UnsupportedOperationException(action);
+    }
+
+    @Override
+    public MBeanInfo getMBeanInfo(){
+        List<MBeanAttributeInfo> attributes = new ArrayList<>();
+        for(String name: snapshot().keySet()){
+            attributes.add(new MBeanAttributeInfo(name, Long.class.getName(), name, true, false, false));
+        }
+        return new MBeanInfo(getClass().getName(), "Metrics of a simulation run",
+                attributes.toArray(new MBeanAttributeInfo[0]), null, null, null);
+    }
+}
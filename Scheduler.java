@@ -0,0 +1,491 @@
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Decides how the Sensors and Agents of a simulation are run.
+ *
+ * PLATFORM_THREADS is the original behaviour, one thread per Sensor. VIRTUAL_THREADS runs the same loops on virtual
+ * threads, which needs a Java version that has them and falls back to platform threads otherwise. POOLED turns the
+ * Sensors into actors as well: they have no thread of their own, they are scheduled on a work-stealing pool when a
+ * message arrives in their Mailbox or when their fire spread timer is due, and only one worker runs a given actor at
+ * a time.
+ *
+ * Agents are actors in every mode, since a fire can copy thousands of them within a second. They come from the
+ * AgentPool of the Scheduler, which recycles them once their Sensor burns and caps how many are alive at once.
+ *
+ * DISCRETE_EVENT drives the same actors from a single queue of events ordered by virtual time. Nothing sleeps: the
+ * clock jumps to the next event, so a run finishes as fast as the CPU allows, and with the same seed every run takes
+ * exactly the same steps. The caller runs the events with runUntil() on its own thread.
+ */
+public class Scheduler {
+
+    public enum Mode {
+        PLATFORM_THREADS, VIRTUAL_THREADS, POOLED, DISCRETE_EVENT
+    }
+
+    private final Mode mode;
+    private ExecutorService pool = null;
+    private ScheduledExecutorService timer = null;
+    //Thread.startVirtualThread, looked up once since it only exists on newer Java versions
+    private Method startVirtualThread = null;
+
+    //event queue and clock of the discrete event mode
+    private PriorityQueue<Event> events = null;
+    private long now = 0;
+    private long nextOrder = 0;
+    private long eventsRun = 0;
+    private Random random = null;
+
+    private final AtomicInteger agentsStarted = new AtomicInteger();
+    private final AtomicInteger clonesStarted = new AtomicInteger();
+    private AgentPool agentPool;
+    private volatile CloningStrategy cloningStrategy = CloningStrategy.FLOOD;
+    private volatile WalkStrategy walkStrategy = WalkStrategy.NON_BACKTRACKING;
+    private final AtomicLong walkSteps = new AtomicLong();
+    private final Metrics metrics = new Metrics();
+
+    /**
+     * Creates a Scheduler for the given mode
+     * @param mode how the Sensors and Agents are run
+     */
+    public Scheduler(Mode mode){
+        this(mode, System.nanoTime());
+    }
+
+    /**
+     * Creates a Scheduler for the given mode. The seed is only used by DISCRETE_EVENT, the other modes are not
+     * repeatable anyway and use ThreadLocalRandom
+     * @param mode how the Sensors and Agents are run
+     * @param seed seed for every random choice of the simulation
+     */
+    public Scheduler(Mode mode, long seed){
+        this.mode = mode;
+        if(mode != Mode.DISCRETE_EVENT){
+            //Agents run on the pool in every mode, Sensors only in POOLED
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    ForkJoinPool.defaultForkJoinWorkerThreadFactory, null, true);
+            ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+                Thread thread = new Thread(r, "scheduler-timer");
+                thread.setDaemon(true);
+                return thread;
+            });
+            executor.setRemoveOnCancelPolicy(true);
+            timer = executor;
+        }
+        if(mode == Mode.VIRTUAL_THREADS){
+            try{
+                startVirtualThread = Thread.class.getMethod("startVirtualThread", Runnable.class);
+            } catch(NoSuchMethodException e){
+                System.err.println("Virtual threads are not available, using platform threads");
+            }
+        }
+        else if(mode == Mode.DISCRETE_EVENT){
+            events = new PriorityQueue<>();
+            random = new Random(seed);
+        }
+        agentPool = new AgentPool(this, AgentPool.UNLIMITED);
+        metrics.gauge("agents.live", () -> agentPool.getLive());
+        metrics.gauge("agents.peak", () -> agentPool.getPeak());
+        metrics.gauge("agents.started", agentsStarted::get);
+        metrics.gauge("walk.steps", walkSteps::get);
+    }
+
+    /**
+     * Reads a mode from a command line argument such as "pooled" or "virtual"
+     * @param name name of the mode, case does not matter
+     * @return the matching Mode, PLATFORM_THREADS if nothing matches
+     */
+    public static Mode parseMode(String name){
+        String lower = name.toLowerCase();
+        if(lower.startsWith("virtual")){
+            return Mode.VIRTUAL_THREADS;
+        }
+        else if(lower.startsWith("pool")){
+            return Mode.POOLED;
+        }
+        else if(lower.startsWith("discrete") || lower.startsWith("event")){
+            return Mode.DISCRETE_EVENT;
+        }
+        return Mode.PLATFORM_THREADS;
+    }
+
+    /**
+     * Retrieves the mode of this Scheduler
+     * @return Mode the Sensors and Agents are run in
+     */
+    public Mode getMode(){
+        return this.mode;
+    }
+
+    /**
+     * Retrieves the Metrics the Sensors and Agents of this run record into
+     * @return Metrics of the run
+     */
+    public Metrics getMetrics(){
+        return this.metrics;
+    }
+
+    /**
+     * Returns true if Sensors are actors rather than threads, Agents always are
+     * @return boolean for whether the mode is POOLED or DISCRETE_EVENT
+     */
+    public boolean isActorMode(){
+        return mode == Mode.POOLED || mode == Mode.DISCRETE_EVENT;
+    }
+
+    /**
+     * Returns true if the simulation runs in virtual time on the caller's thread
+     * @return boolean for whether the mode is DISCRETE_EVENT
+     */
+    public boolean isVirtualTime(){
+        return mode == Mode.DISCRETE_EVENT;
+    }
+
+    /**
+     * Starts running the given Sensor
+     * @param sensor Sensor to start
+     */
+    public void start(Sensor sensor){
+        sensor.attach(this);
+        if(!isActorMode()){
+            startThread(sensor);
+        }
+    }
+
+    /**
+     * Starts running the given Agent as an actor
+     * @param agent Agent to start
+     */
+    public void start(Agent agent){
+        agentsStarted.incrementAndGet();
+        agentPool.adopt(agent);
+        agent.attach(this);
+    }
+
+    /**
+     * Caps the number of Agents alive at once. Has to be called before the first Agent is started
+     * @param cap largest number of live Agents, AgentPool.UNLIMITED for no cap
+     */
+    public void setAgentCap(int cap){
+        if(agentsStarted.get() > 0){
+            throw new IllegalStateException("Agents have been started already");
+        }
+        agentPool = new AgentPool(this, cap);
+    }
+
+    /**
+     * Sets which Sensors the Agents copy themselves onto once they have found the fire
+     * @param strategy CloningStrategy to use, FLOOD unless set
+     */
+    public void setCloningStrategy(CloningStrategy strategy){
+        this.cloningStrategy = strategy;
+    }
+
+    /**
+     * Retrieves which Sensors the Agents copy themselves onto
+     * @return CloningStrategy in use
+     */
+    public CloningStrategy getCloningStrategy(){
+        return this.cloningStrategy;
+    }
+
+    /**
+     * Sets how the first Agent walks while looking for the fire. Has to be called before the first Agent is started
+     * @param strategy WalkStrategy to use, NON_BACKTRACKING unless set
+     */
+    public void setWalkStrategy(WalkStrategy strategy){
+        this.walkStrategy = strategy;
+    }
+
+    /**
+     * Retrieves how the first Agent walks while looking for the fire
+     * @return WalkStrategy in use
+     */
+    public WalkStrategy getWalkStrategy(){
+        return this.walkStrategy;
+    }
+
+    /**
+     * Counts one step of a walking Agent
+     * @return long number of walk steps so far, this one included
+     */
+    long nextWalkStep(){
+        return walkSteps.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of steps the walking Agents have taken, all of them together
+     * @return long number of walk steps
+     */
+    public long getWalkSteps(){
+        return walkSteps.get();
+    }
+
+    /**
+     * Retrieves the pool the Agents of this Scheduler come from
+     * @return AgentPool of the Scheduler
+     */
+    public AgentPool getAgentPool(){
+        return this.agentPool;
+    }
+
+    /**
+     * Counts an Agent that was started as a copy of another one onto an alerted Sensor, not as a walker
+     */
+    void countClone(){
+        clonesStarted.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of Agents started as copies onto alerted Sensors, each of which sends an AGENT_CREATED
+     * message to the Base Station
+     * @return int number of copies
+     */
+    public int getClonesStarted(){
+        return clonesStarted.get();
+    }
+
+    /**
+     * Runs a task of a Sensor or an Agent as soon as possible. The owner is kept with the event so that a Checkpoint
+     * can save it
+     * @param task Runnable to run
+     * @param owner Sensor or Agent the task is a step of
+     */
+    void execute(Runnable task, Object owner){
+        if(events != null){
+            events.add(new Event(now, nextOrder++, task, owner, false));
+        }
+        else{
+            pool.execute(task);
+        }
+    }
+
+    /**
+     * Runs the timer of a Sensor or an Agent once the given delay has passed. The owner is kept with the event so
+     * that a Checkpoint can save it
+     * @param task Runnable to run
+     * @param delayMillis delay in milliseconds
+     * @param owner Sensor or Agent the timer belongs to
+     */
+    void schedule(Runnable task, long delayMillis, Object owner){
+        if(events != null){
+            events.add(new Event(now + TimeUnit.MILLISECONDS.toNanos(delayMillis), nextOrder++, task, owner, true));
+        }
+        else{
+            timer.schedule(() -> pool.execute(task), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Returns the events still waiting in the discrete event mode, in the order they will run
+     * @return List of the pending events
+     */
+    List<Event> getPendingEvents(){
+        if(events == null){
+            throw new IllegalStateException("Only the discrete event mode has a queue of events");
+        }
+        List<Event> pending = new ArrayList<>(events);
+        Collections.sort(pending);
+        return pending;
+    }
+
+    /**
+     * Puts back an event saved by a Checkpoint
+     * @param time virtual time of the event in nanoseconds
+     * @param order order of the event among those at the same time
+     * @param task Runnable to run
+     * @param owner Sensor or Agent the event belongs to
+     * @param timer true for a timer, false for a step
+     */
+    void restoreEvent(long time, long order, Runnable task, Object owner, boolean timer){
+        events.add(new Event(time, order, task, owner, timer));
+    }
+
+    /**
+     * Sets the clock and counters of the discrete event mode back to those saved by a Checkpoint
+     * @param now virtual time in nanoseconds
+     * @param nextOrder order the next event gets
+     * @param eventsRun number of events run so far
+     * @param random source of random choices, in the state it was saved in
+     * @param walkSteps number of walk steps so far
+     * @param agentsStarted number of Agents started so far
+     * @param clonesStarted number of those started as copies onto alerted Sensors
+     */
+    void restoreClock(long now, long nextOrder, long eventsRun, Random random, long walkSteps, int agentsStarted,
+                      int clonesStarted){
+        if(events == null){
+            throw new IllegalStateException("Only the discrete event mode can be restored");
+        }
+        this.now = now;
+        this.nextOrder = nextOrder;
+        this.eventsRun = eventsRun;
+        this.random = random;
+        this.walkSteps.set(walkSteps);
+        this.agentsStarted.set(agentsStarted);
+        this.clonesStarted.set(clonesStarted);
+    }
+
+    /**
+     * Returns the order the next event will get
+     * @return long order of the next event
+     */
+    long getNextOrder(){
+        return this.nextOrder;
+    }
+
+    /**
+     * Returns the virtual time of the next event of the discrete event mode
+     * @return long time in nanoseconds, or -1 if no event is left
+     */
+    long nextEventTime(){
+        Event event = events.peek();
+        return event == null ? -1 : event.time;
+    }
+
+    /**
+     * Runs the events of the discrete event mode in order until the stop condition holds, there are no events
+     * left, or the clock would pass the time limit
+     * @param stop checked before every event
+     * @param limitMillis virtual time limit in milliseconds
+     * @return true if the stop condition was reached
+     */
+    public boolean runUntil(BooleanSupplier stop, long limitMillis){
+        if(events == null){
+            throw new IllegalStateException("Only the discrete event mode runs on the caller's thread");
+        }
+        long limit = TimeUnit.MILLISECONDS.toNanos(limitMillis);
+        while(!stop.getAsBoolean()){
+            Event event = events.peek();
+            if(event == null || event.time > limit){
+                return false;
+            }
+            events.poll();
+            now = event.time;
+            eventsRun++;
+            event.task.run();
+        }
+        return true;
+    }
+
+    /**
+     * Returns the current time, virtual in the discrete event mode
+     * @return long time in nanoseconds
+     */
+    public long now(){
+        if(events != null){
+            return now;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Returns the source of random choices for the Sensors and Agents
+     * @return the seeded Random in the discrete event mode, ThreadLocalRandom otherwise
+     */
+    public Random random(){
+        if(random != null){
+            return random;
+        }
+        return ThreadLocalRandom.current();
+    }
+
+    /**
+     * Returns the number of events run so far in the discrete event mode
+     * @return long number of events
+     */
+    public long getEventsRun(){
+        return this.eventsRun;
+    }
+
+    /**
+     * Returns the number of Agents started so far
+     * @return int number of Agents
+     */
+    public int getAgentsStarted(){
+        return agentsStarted.get();
+    }
+
+    /**
+     * Stops the pool and the timer. Sensor threads started for the thread modes are left alone
+     */
+    public void shutdown(){
+        if(pool != null){
+            timer.shutdownNow();
+            pool.shutdownNow();
+        }
+    }
+
+    private void startThread(Sensor sensor){
+        if(startVirtualThread != null){
+            try{
+                startVirtualThread.invoke(null, sensor);
+                return;
+            } catch(ReflectiveOperationException e){
+                System.err.println("Could not start virtual thread: " + e);
+            }
+        }
+        new Thread(sensor).start();
+    }
+
+    /**
+     * Task of the discrete event mode. Events at the same time run in the order they were scheduled
+     */
+    static class Event implements Comparable<Event> {
+
+        private final long time;
+        private final long order;
+        private final Runnable task;
+        //Sensor or Agent the task belongs to, null for other tasks
+        private final Object owner;
+        private final boolean timer;
+
+        private Event(long time, long order, Runnable task, Object owner, boolean timer){
+            this.time = time;
+            this.order = order;
+            this.task = task;
+            this.owner = owner;
+            this.timer = timer;
+        }
+
+        long getTime(){
+            return this.time;
+        }
+
+        long getOrder(){
+            return this.order;
+        }
+
+        Object getOwner(){
+            return this.owner;
+        }
+
+        Runnable getTask(){
+            return this.task;
+        }
+
+        boolean isTimer(){
+            return this.timer;
+        }
+
+        @Override
+        public int compareTo(Event other){
+            if(time != other.time){
+                return Long.compare(time, other.time);
+            }
+            return Long.compare(order, other.order);
+        }
+    }
+}
@@ -1,26 +1,50 @@
 import java.util.*;
-import java.util.concurrent.ArrayBlockingQueue;
-import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class Sensor implements Runnable{
     //Consumer Thread implementation
 
-    /*
-    status can be: normal, alert, dead
-     */
-    private String status = "normal";
-    private boolean isDead = false;
+    //ordinal of the Status, it only moves forward: normal, alert, fire, dead
+    private final AtomicInteger status = new AtomicInteger(Status.NORMAL.ordinal());
+    private static final Status[] STATUSES = Status.values();
 
-    private List<Sensor> neighbors = new ArrayList<>();
-    private BlockingQueue<String> q = new ArrayBlockingQueue<String>(500);
-    private List<String> receivedMessages = new ArrayList<>();
-    //this blocking Queue is unique
+    //Graph the Sensor belongs to, its neighbors are read from there
+    private Graph graph = null;
+    //Mailbox size and overflow policy for every Sensor created from now on
+    private static volatile int mailboxCapacity = 500;
+    private static volatile Mailbox.Policy mailboxPolicy = Mailbox.Policy.DROP_OLDEST;
+    //messages for this Sensor, any thread may send but only this Sensor takes them out
+    private Mailbox<Message> q = new Mailbox<>(new ArrayDeque<Message>(), mailboxCapacity, mailboxPolicy,
+            Message::coalesceKey);
+    //messages relayed lately, created the first time a message is relayed
+    private DedupCache relayed = null;
+    //number of messages each Sensor created from now on remembers
+    private static volatile int dedupCapacity = DedupCache.DEFAULT_CAPACITY;
+    //numbers the messages that start from this Sensor
+    private final AtomicInteger sequence = new AtomicInteger();
 
     private int x;
     private int y;
+    //position of the Sensor within its Graph, -1 until it is added to one
+    private int id = -1;
+    //next hop toward the base station, read from the Graph the first time it is needed
+    private static final int UNROUTED = -2;
+    private int routeParent = UNROUTED;
+
+    //walk step at which an Agent last looked for the fire from here, 0 if none has
+    private volatile long lastVisited = 0;
 
-    //Agent on the Sensor
-    private Agent agent = null;
+    //Agent on the Sensor, claimed and released with compare and set
+    private final AtomicReference<Agent> agent = new AtomicReference<>();
+
+    //used when the Sensor is an actor on a pooled Scheduler instead of a thread
+    private Scheduler scheduler = null;
+    private final AtomicBoolean scheduled = new AtomicBoolean(false);
+    private volatile boolean spreadDue = false;
+    private boolean spreadArmed = false;
 
     /**
      * Constructor for the Sensor object
@@ -30,94 +54,189 @@ public class Sensor implements Runnable{
     public Sensor(int x, int y){
         this.x = x;
         this.y = y;
+    }
 
-        //q = new PriorityBlockingQueue<>();
+    /**
+     * Retrieves the status for the current Sensor
+     * @return String representing the status of
+     * the current Sensor
+     */
+    public String reportStatus(){
+        return getStatus().toString();
     }
 
+    /**
+     * Retrieves the status for the current Sensor
+     * @return Status of the current Sensor
+     */
+    public Status getStatus(){
+        return STATUSES[status.get()];
+    }
 
     /**
-     * Receives and processes message passed to the method. Can
-     * handle messages for fire, Sensor death, and requests
-     * for status.
-     * @param message String message to be processed by the current
-     * Sensor
-     * @param receive the Sensor in which the message was received,
-     * in case of needed replies
+     * Moves the status of the current node forward. Moving to a status the node
+     * already has, or to an earlier one, does nothing, so the Agent on the node
+     * is only told when the status really changes
+     * @param next Status to move to
+     * @return true if the status changed
      */
-    public void receiveMessage(String message, Sensor receive){
-        if(isDead){
-            //do nothing, can't receive messages
-        }
-        else{
-            if(message.equals("fire")){
-                //placeholder status, feel free to change
-                this.status = "alert";
+    public boolean advanceTo(Status next){
+        int previous;
+        do{
+            previous = status.get();
+            if(previous >= next.ordinal()){
+                return false;
             }
-            else if(message.equals("kill")){
-                this.killSensor();
+        } while(!status.compareAndSet(previous, next.ordinal()));
+        changed();
+        Metrics metrics = metrics();
+        if(metrics != null){
+            if(next == Status.FIRE){
+                metrics.fireFrontChanged(1);
             }
-            else if(message.equals("status")){
-                //send status to the asking sensor
-                receive.receiveMessage(this.status, this);
+            else if(next == Status.DEAD && previous == Status.FIRE.ordinal()){
+                metrics.fireFrontChanged(-1);
             }
-            //not sure what other messages are involved
-            else if(message.contains("base")){
-                //thinking we could mark any message intended for base
+        }
+        Trace trace = trace();
+        if(trace != null){
+            trace.status(this);
+        }
+
+        Agent resident = agent.get();
+        if(resident != null){
+            if(next == Status.ALERT){
+                resident.getQueue().offer(Message.Type.ALERT);
+            }
+            else if(previous < Status.FIRE.ordinal()){
+                //fire and death both send the Agent away, it only needs to hear it once
+                resident.getQueue().offer(Message.Type.FIRE);
             }
         }
+        return true;
     }
 
     /**
-     * Retrieves the status for the current Sensor
-     * @return String representing the status of
-     * the current Sensor
+     * Adds an agent to the current node after checking
+     * for an Agent on the current node
+     * @param agent Agent object to be placed on
+     * on the node location
      */
-    public synchronized String reportStatus(){
-        return status;
+    public void agentMove(Agent agent){
+        if(!tryClaim(agent)){
+            Log.debug(id, now(), "agent.occupied");
+        }
     }
 
     /**
-     * Changes the status of the current node
-     * @param status String representation of the
-     * status of the node, indicating whether or
-     * not it is on fire
+     * Places an Agent on the current node if no other
+     * Agent is on it. When two Agents try at once only
+     * one of them gets the node
+     * @param agent Agent trying to move onto the node
+     * @return true if the Agent is now on the node,
+     * false if another Agent was already there
      */
-    public void setStatus(String status){
-        //add to event log new status
-        //String "node statusupdate statusName
-        //System.out.println(this + " " + "is " + status);
-        this.status = status;
-        try{
-            if(agentPresent()){
-                this.agent.getQueue().put(status);
+    public boolean tryClaim(Agent agent){
+        if(this.agent.compareAndSet(null, agent)){
+            changed();
+            Trace trace = trace();
+            if(trace != null){
+                trace.agent(this);
             }
+            return true;
         }
-        catch(InterruptedException e){
-            e.printStackTrace();
+        return false;
+    }
+
+    /**
+     * Takes an Agent off the current node when it moves
+     * to another node or leaves for good. Nothing happens
+     * if a different Agent is on the node
+     * @param agent Agent leaving the node
+     * @return true if the Agent was on the node
+     */
+    public boolean release(Agent agent){
+        if(this.agent.compareAndSet(agent, null)){
+            changed();
+            Trace trace = trace();
+            if(trace != null){
+                trace.agent(this);
+            }
+            return true;
         }
+        return false;
     }
 
     /**
-     * Adds an agent to the current node after checking
-     * for an Agent on the current node
-     * @param agent Agent object to be placed on
-     * on the node location
+     * Tells the Graph that the status or the Agent of this Sensor changed
      */
-    public synchronized void agentMove(Agent agent){
-        if(agentPresent() == false){
-            this.agent = agent;
+    private void changed(){
+        Graph owner = graph;
+        if(owner != null){
+            owner.sensorChanged(id);
         }
-        else{
-            System.out.println("Agent already present on sensor");
+    }
+
+    /**
+     * Retrieves the Trace of the Graph, if the run is recorded
+     * @return Trace to record to, or null
+     */
+    private Trace trace(){
+        Graph owner = graph;
+        return owner == null ? null : owner.getTrace();
+    }
+
+    /**
+     * Returns the time of the Scheduler for the log
+     * @return long Scheduler time in nanoseconds, -1 before the Sensor is started
+     */
+    private long now(){
+        Scheduler current = scheduler;
+        return current == null ? -1 : current.now();
+    }
+
+    /**
+     * Retrieves the Metrics of the run, once the Sensor has been started
+     * @return Metrics to record into, or null
+     */
+    private Metrics metrics(){
+        Scheduler current = scheduler;
+        return current == null ? null : current.getMetrics();
+    }
+
+    /**
+     * Sends a message to another Sensor, recording the hop if the run is traced
+     * @param sensor Sensor to send to
+     * @param message Message to send
+     */
+    private void send(Sensor sensor, Message message){
+        Trace trace = trace();
+        if(trace != null){
+            trace.hop(id, sensor.getId(), message.getType());
         }
+        Metrics metrics = metrics();
+        if(metrics != null){
+            metrics.messageSent(message.getType());
+        }
+        sensor.getQ().offer(message);
     }
 
     /**
-     * Sets current agent to null for when an agent
-     * moves randomly to another node
+     * Records that an Agent looking for the fire is on
+     * the current node
+     * @param step walk step of the Scheduler, counting from 1
      */
-    public synchronized void agentLeave(){
-        this.agent = null;
+    void markVisited(long step){
+        this.lastVisited = step;
+    }
+
+    /**
+     * Retrieves the walk step at which an Agent looking for
+     * the fire was last on the current node
+     * @return long walk step, 0 if no Agent has been here
+     */
+    long getLastVisited(){
+        return this.lastVisited;
     }
 
     /**
@@ -127,26 +246,8 @@ public class Sensor implements Runnable{
      * @return boolean value representing presence of
      * Agent object
      */
-    public synchronized boolean agentPresent(){
-        if(this.agent == null){
-            return false;
-        }
-        return true;
-    }
-
-    /**
-     * Adds a neighbor to the list of neighbors of
-     * this Sensor based on the edges provided in
-     * the text file passed in by the user. If the
-     * Sensor to be added doesn't exist in the
-     * LinkedList, then it is added.
-     * @param neighbor Sensor that has an edge
-     * with the current Sensor
-     */
-    public void addNeighbor(Sensor neighbor){
-        if(!this.neighbors.contains(neighbor)){
-            this.neighbors.add(neighbor);
-        }
+    public boolean agentPresent(){
+        return this.agent.get() != null;
     }
 
     /**
@@ -161,6 +262,30 @@ public class Sensor implements Runnable{
         return coord;
     }
 
+    /**
+     * Retrieves the id the Graph gave this Sensor
+     * @return int id, or -1 if the Sensor is not in a Graph
+     */
+    public int getId(){
+        return this.id;
+    }
+
+    /**
+     * Sets the id of this Sensor, called by the Graph when the Sensor is added
+     * @param id position of the Sensor within the Graph
+     */
+    void setId(int id){
+        this.id = id;
+    }
+
+    /**
+     * Sets the Graph this Sensor belongs to, called by the Graph when the Sensor is added
+     * @param graph Graph holding the edges of this Sensor
+     */
+    void setGraph(Graph graph){
+        this.graph = graph;
+    }
+
     /**
      * Retrieves the x-coordinate of the Sensor location
      * @return int value of Sensor location x
@@ -178,126 +303,430 @@ public class Sensor implements Runnable{
     }
 
     /**
-     * Called when the fire has spread to the current
-     * Sensor. Messages all neighbors about status update.
-     * Marks self as dead since Sensor is now unable to
-     * do anything.
+     * Retrieves the list of neighboring Sensors
+     * @return read only List representation of Sensors
+     * that share an edge with the current Sensor
      */
-    private void killSensor(){
-        Iterator<Sensor> iter = this.neighbors.iterator();
-        while(iter.hasNext()){
-            Sensor active = iter.next();
-            //this is just a temp message, cool to change
-            active.receiveMessage("fire", this);
+    public List<Sensor> getNeighbors(){
+        if(graph == null){
+            return Collections.emptyList();
         }
-        //this.status = "dead";
-        isDead = true;
+        return graph.getNeighbors(this);
     }
 
     /**
-     * Retrieves the list of neighboring Sensors
-     * @return List representation of Sensors that
-     * share an edge with the current Sensor
+     * Returns the Mailbox for the current Sensor
+     * @return Mailbox of messages
      */
-    public List<Sensor> getNeighbors(){
-        return this.neighbors;
+    public Mailbox<Message> getQ() {
+        return q;
     }
 
     /**
-     * Returns the BlockingQueue for the current Sensor
-     * @return
+     * Gives out the next sequence number for a message starting from this Sensor
+     * @return int sequence number
      */
-    public BlockingQueue<String> getQ() {
-        return q;
+    int nextSequence(){
+        return sequence.getAndIncrement();
+    }
+
+    //state read and written by a Checkpoint of the discrete event mode
+
+    /**
+     * Returns the task of an event of this Sensor, to put it back on the Scheduler
+     * @param timer true for the fire spread timer, false for a step
+     * @return Runnable the event runs
+     */
+    Runnable task(boolean timer){
+        return timer ? this::spreadTimer : this::step;
     }
 
     /**
-     * Handles the messages placed in the Sensor BlockingQueue, sending
-     * messages to the Base Station log, and fire spreading.
+     * Returns the sequence number the next message starting from this Sensor gets
+     * @return int next sequence number
      */
-    public void run(){
-        try {
-            while (!isDead) {
-                //handle blocking queue
-                while(!q.isEmpty()){
-                    String message = q.take();
-                    //System.out.println(this + " received " + message);
-
-                    if(message.equals("fire")){
-                        this.setStatus("fire");
-
-                        if(this instanceof BaseStation){
-                            System.out.println("Basestation on fire");
-                            System.out.println(((BaseStation)this).getLog());
-                            isDead = true;
-                            for(Sensor sensor: getNeighbors()){
-                                sensor.getQ().put("dead");
-                            }
-                        }
-                        //set neighboring nodes to alert
-                        /*for (Sensor sensor : getNeighbors()) {
-                            if(sensor.status.equals("normal")) {
-                                sensor.getQ().put("alert");
-                            }
-                        }*/
-                        for(Sensor sensor: getNeighbors()){
-                            System.out.println(sensor.getCoordinates());
-                            if(!sensor.status.equals("fire")){
-                                System.out.println("here");
-                                sensor.getQ().put("alert");
-                            }
-                        }
-                    }
-                    else if(message.equals("alert")) {
-                        this.setStatus("alert");
+    int getSequence(){
+        return sequence.get();
+    }
+
+    /**
+     * Returns the next hop toward the base station found so far
+     * @return int id of the parent, -1 for none, or -2 if it was never looked up
+     */
+    int getRouteParent(){
+        return this.routeParent;
+    }
+
+    /**
+     * Returns the cache of relayed messages
+     * @return DedupCache, or null if this Sensor never relayed a message
+     */
+    DedupCache getRelayed(){
+        return this.relayed;
+    }
+
+    /**
+     * Returns the Agent on this Sensor
+     * @return Agent, or null if there is none
+     */
+    Agent getAgent(){
+        return this.agent.get();
+    }
+
+    /**
+     * Returns the flags of the Sensor as an actor: 1 if a step is scheduled, 2 if the fire spread timer went off
+     * and 4 if it is set
+     * @return int flags
+     */
+    int getActorFlags(){
+        return (scheduled.get() ? 1 : 0) | (spreadDue ? 2 : 0) | (spreadArmed ? 4 : 0);
+    }
+
+    /**
+     * Puts the Sensor back in a saved state and attaches it to the Scheduler without waking it, since its pending
+     * events are put back by the Checkpoint
+     * @param scheduler Scheduler of the restored run
+     * @param status Status of the Sensor
+     * @param sequence next sequence number
+     * @param routeParent next hop as returned by getRouteParent
+     * @param lastVisited last walk step an Agent looked from here
+     * @param relayed cache of relayed messages, or null
+     * @param pending messages waiting in the Mailbox, in order
+     * @param agent Agent on the Sensor, or null
+     * @param actorFlags flags as returned by getActorFlags
+     */
+    void restore(Scheduler scheduler, Status status, int sequence, int routeParent, long lastVisited,
+                 DedupCache relayed, List<Message> pending, Agent agent, int actorFlags){
+        this.status.set(status.ordinal());
+        this.sequence.set(sequence);
+        this.routeParent = routeParent;
+        this.lastVisited = lastVisited;
+        this.relayed = relayed;
+        this.agent.set(agent);
+        this.scheduled.set((actorFlags & 1) != 0);
+        this.spreadDue = (actorFlags & 2) != 0;
+        this.spreadArmed = (actorFlags & 4) != 0;
+        this.scheduler = scheduler;
+        q.setListener(null);
+        while(q.poll() != null){
+            //drop anything left from loading
+        }
+        for(Message message: pending){
+            q.offer(message);
+        }
+        q.setListener(this::wake);
+        changed();
+        if(status == Status.FIRE){
+            scheduler.getMetrics().fireFrontChanged(1);
+        }
+    }
+
+    /**
+     * Returns true once the Sensor has stopped handling messages
+     * @return boolean for whether the Sensor is dead
+     */
+    public boolean isDead(){
+        return status.get() == Status.DEAD.ordinal();
+    }
+
+    /**
+     * Retrieves the Graph this Sensor belongs to
+     * @return Graph, or null if the Sensor is not in one
+     */
+    protected Graph getGraph(){
+        return this.graph;
+    }
+
+    /**
+     * Called by the Scheduler before the Sensor is started. In the actor modes the Sensor is woken up by
+     * its Mailbox instead of running a thread
+     * @param scheduler Scheduler running this Sensor
+     */
+    void attach(Scheduler scheduler){
+        this.scheduler = scheduler;
+        if(scheduler.isActorMode()){
+            q.setListener(this::wake);
+            wake();
+        }
+    }
+
+    /**
+     * Schedules a step of this Sensor on the pool unless one is already scheduled or running
+     */
+    private void wake(){
+        if(scheduled.compareAndSet(false, true)){
+            scheduler.execute(this::step, this);
+        }
+    }
+
+    /**
+     * Called when the fire spread timer goes off
+     */
+    private void spreadTimer(){
+        spreadDue = true;
+        wake();
+    }
+
+    /**
+     * One turn of the Sensor as an actor: handles every message waiting, spreads the fire if the spread timer went
+     * off, and sets the timer again while there are neighbors left to catch on fire. Only one step of a Sensor runs
+     * at a time, so the state it touches is the same as with a thread of its own.
+     */
+    private void step(){
+        Message message;
+        int handled = 0;
+        while(!isDead() && (message = q.poll()) != null){
+            handleMessage(message);
+            handled++;
+        }
+        if(handled > 0){
+            scheduler.getMetrics().mailboxDrained(handled);
+        }
+        if(!isDead() && spreadDue){
+            spreadDue = false;
+            spreadArmed = false;
+            List<Sensor> neighborsNotOnFire = neighborsNotOnFire();
+            if(neighborsNotOnFire.size() > 0){
+                spreadFire(neighborsNotOnFire);
+            }
+        }
+        if(!isDead() && !spreadArmed && getStatus() == Status.FIRE && neighborsNotOnFire().size() > 0){
+            spreadArmed = true;
+            scheduler.schedule(this::spreadTimer, 3000, this);
+        }
+        scheduled.set(false);
+        //a message may have come in after the mailbox was drained
+        if(!isDead() && (!q.isEmpty() || spreadDue)){
+            wake();
+        }
+    }
+
+    /**
+     * Handles one message taken from the Mailbox, sending messages to the Base Station log, and fire spreading.
+     * @param message Message to handle
+     */
+    private void handleMessage(Message message){
+        //System.out.println(this + " received " + message);
+        Metrics metrics = metrics();
+        if(metrics != null){
+            metrics.messageReceived(message.getType());
+        }
+
+        switch(message.getType()){
+            case FIRE:
+                if(!this.advanceTo(Status.FIRE)){
+                    //already burning, the neighbors were alerted the first time
+                    break;
+                }
+
+                if(this instanceof BaseStation){
+                    Log.info(id, now(), "basestation.fire");
+                    if(Log.isEnabled(Log.Level.INFO)){
+                        Log.info(id, now(), "basestation.log", "recent", ((BaseStation)this).getRecentLog());
                     }
-                    else if(message.equals("dead")){
-                        this.isDead = true;
-                        if(agentPresent()){
-                            this.agent.getQueue().put("fire");
-                        }
-                        for(Sensor sensor: getNeighbors()){
-                            sensor.getQ().put("dead");
+                    this.advanceTo(Status.DEAD);
+                    for(Sensor sensor: getNeighbors()){
+                        if(!sensor.isDead()){
+                            send(sensor, Message.DEAD);
                         }
                     }
-                    else{
-                        if(this instanceof BaseStation){
-                            ((BaseStation)this).addLog(message);
-                        }
-                        else if(!receivedMessages.contains(message)){
-                            System.out.println(message + " This is not base station");
-                            for(Sensor sensor: getNeighbors()){
-                                sensor.getQ().put(message);
-                            }
-                            receivedMessages.add(message);
+                }
+                //set neighboring nodes to alert
+                boolean traced = Log.isEnabled(Log.Level.TRACE);
+                for(Sensor sensor: getNeighbors()){
+                    if(sensor.getStatus() == Status.NORMAL){
+                        if(traced){
+                            Log.trace(id, now(), "alert.sent", "to", sensor.getId());
                         }
-                        //send the message to neighboring nodes to get to the base station
+                        send(sensor, Message.ALERT);
                     }
                 }
-
-                if(this.status.equals("fire") && getNeighbors().size() > 0) {
-
-                    List<Sensor> neighborsNotOnFire = new ArrayList<>();
+                break;
+            case ALERT:
+                this.advanceTo(Status.ALERT);
+                break;
+            case DEAD:
+                if(this.advanceTo(Status.DEAD)){
                     for(Sensor sensor: getNeighbors()){
-                        if(sensor.reportStatus().equals("alert") || sensor.reportStatus().equals("normal")){
-                            neighborsNotOnFire.add(sensor);
+                        if(!sensor.isDead()){
+                            send(sensor, Message.DEAD);
                         }
                     }
+                }
+                break;
+            default:
+                if(this instanceof BaseStation){
+                    if(metrics != null && message.getType() == Message.Type.AGENT_CREATED){
+                        metrics.reachedBaseStation(scheduler.now() - message.getPayload());
+                    }
+                    ((BaseStation)this).addLog(message);
+                }
+                else if(firstTimeRelayed(message)){
+                    if(Log.isEnabled(Log.Level.TRACE)){
+                        Log.trace(id, now(), "message.relayed", "message", message);
+                    }
+                    forwardToBaseStation(message);
+                }
+        }
+    }
 
-                    //System.out.println(this + " " + neighborsNotOnFire);
+    /**
+     * Checks a message against the messages this Sensor relayed lately, and remembers it
+     * @param message Message about to be relayed
+     * @return true if the message has not been relayed by this Sensor within the window of its DedupCache
+     */
+    private boolean firstTimeRelayed(Message message){
+        if(relayed == null){
+            relayed = new DedupCache(dedupCapacity);
+        }
+        return relayed.add(message.getSource(), message.getSequence());
+    }
 
-                    if(neighborsNotOnFire.size() == 0){
-                        //this.setStatus("dead");
-                        //isDead = true;
-                    }
-                    else{
+    /**
+     * Sets how many relayed messages each Sensor remembers to drop duplicates. Only Sensors created afterwards use
+     * the new capacity, so it has to be set before the configuration is loaded
+     * @param capacity number of messages remembered per Sensor, at least 1
+     */
+    public static void setDedupCapacity(int capacity){
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        dedupCapacity = capacity;
+    }
+
+    /**
+     * Sets the Mailbox of each Sensor created afterwards, so it has to be set before the configuration is loaded
+     * @param capacity number of messages a Mailbox holds before the policy applies
+     * @param policy what a full Mailbox does with a new message
+     */
+    public static void setMailbox(int capacity, Mailbox.Policy policy){
+        if(capacity < 1){
+            throw new IllegalArgumentException("capacity must be at least 1: " + capacity);
+        }
+        mailboxCapacity = capacity;
+        mailboxPolicy = policy;
+    }
+
+    /**
+     * Sends a message one hop closer to the base station. Without any route left the message is flooded to every
+     * neighbor, which is how every message used to travel
+     * @param message Message for the base station log
+     */
+    private void forwardToBaseStation(Message message){
+        Sensor next = nextHop();
+        if(next != null){
+            send(next, message);
+        }
+        else{
+            for(Sensor sensor: getNeighbors()){
+                send(sensor, message);
+            }
+        }
+    }
+
+    /**
+     * Finds the neighbor to send messages for the base station to. That is the parent on the routing tree of the
+     * Graph while it is alive. Once it dies the tree is repaired locally: the living neighbor closest to the base
+     * station becomes the new parent. Only neighbors strictly closer than this Sensor on the tree are taken, so the
+     * hops left go down with every step and two Sensors at the same depth can never pass a message back and forth
+     * @return Sensor for the next hop, or null if no living neighbor is closer to the base station
+     */
+    private Sensor nextHop(){
+        if(graph == null){
+            return null;
+        }
+        if(routeParent == UNROUTED){
+            routeParent = graph.getRouteParent(id);
+        }
+        if(routeParent >= 0 && !graph.getSensorById(routeParent).isDead()){
+            return graph.getSensorById(routeParent);
+        }
 
-                        Thread.sleep(3000);
+        int hops = graph.getHopsToBaseStation(id);
+        Sensor best = null;
+        int bestHops = Integer.MAX_VALUE;
+        for(Sensor sensor: getNeighbors()){
+            int neighborHops = graph.getHopsToBaseStation(sensor.getId());
+            if(!sensor.isDead() && neighborHops >= 0 && neighborHops < hops && neighborHops < bestHops){
+                best = sensor;
+                bestHops = neighborHops;
+            }
+        }
+        if(best != null){
+            routeParent = best.getId();
+        }
+        return best;
+    }
+
+    /**
+     * Collects the neighbors that can still catch on fire
+     * @return List of neighboring Sensors that are alerted or normal
+     */
+    private List<Sensor> neighborsNotOnFire(){
+        List<Sensor> neighborsNotOnFire = new ArrayList<>();
+        for(Sensor sensor: getNeighbors()){
+            if(!sensor.getStatus().isAtLeast(Status.FIRE)){
+                neighborsNotOnFire.add(sensor);
+            }
+        }
+        return neighborsNotOnFire;
+    }
+
+    /**
+     * Sets one of the given neighbors on fire, picked at random
+     * @param neighborsNotOnFire Sensors that can still catch on fire
+     */
+    private void spreadFire(List<Sensor> neighborsNotOnFire){
+        Random rand = scheduler.random();
+        int randomNumber = rand.nextInt(neighborsNotOnFire.size());
+        Log.debug(id, now(), "fire.spread", "to", neighborsNotOnFire.get(randomNumber).getId());
+        send(neighborsNotOnFire.get(randomNumber), Message.FIRE);
+    }
+
+    /**
+     * Handles a message the thread woke up for and every one already waiting behind it, the same batch a step of an
+     * actor handles, and records how many that was
+     * @param message Message taken from the Mailbox
+     */
+    private void drain(Message message){
+        int handled = 0;
+        do{
+            handleMessage(message);
+            handled++;
+        } while(!isDead() && (message = q.poll()) != null);
+        scheduler.getMetrics().mailboxDrained(handled);
+    }
+
+    /**
+     * Handles the messages placed in the Sensor Mailbox and fire spreading when the Sensor has a thread of its own.
+     * The thread parks on the Mailbox whenever there is nothing to spread, so an idle Sensor uses no CPU.
+     */
+    public void run(){
+        try {
+            while (!isDead()) {
+                List<Sensor> neighborsNotOnFire = Collections.emptyList();
+                if(getStatus() == Status.FIRE){
+                    neighborsNotOnFire = neighborsNotOnFire();
+                }
+
+                if(neighborsNotOnFire.size() == 0){
+                    //nothing to spread, wait for the next message
+                    drain(q.take());
+                }
+                else{
+                    //handle messages while waiting for the fire to spread
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(3000);
+                    long remaining;
+                    while(!isDead() && (remaining = deadline - System.nanoTime()) > 0){
+                        Message message = q.poll(remaining, TimeUnit.NANOSECONDS);
+                        if(message != null){
+                            drain(message);
+                        }
+                    }
 
-                        Random rand = new Random();
-                        int randomNumber = rand.nextInt(neighborsNotOnFire.size());
-                        System.out.println(this + " turned "+ neighborsNotOnFire.get(randomNumber));
-                        neighborsNotOnFire.get(randomNumber).getQ().put("fire");
+                    neighborsNotOnFire = neighborsNotOnFire();
+                    if(!isDead() && neighborsNotOnFire.size() > 0){
+                        spreadFire(neighborsNotOnFire);
                         //This thread sleeps so that the thread it caught on fire has time to process that it is on fire before
                         //this thread would make another decision on who to catch on fire
                         Thread.sleep(10);
@@ -305,7 +734,7 @@ public class Sensor implements Runnable{
                 }
             }
         } catch(InterruptedException e){
-            e.printStackTrace();
+            Log.error(id, now(), "sensor.interrupted", "error", e);
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,239 @@
+import java.util.Arrays;
+
+/**
+ * Spatial index over the Sensor ids of a Graph.
+ *
+ * Point lookups go through an open addressing hash table keyed by the (x, y) coordinates packed into a long, so
+ * finding a Sensor by its coordinates is O(1) and does not box anything. Range queries go through a uniform grid that
+ * is built the first time it is needed and thrown away again when a Sensor is added.
+ *
+ * Once every Sensor is in, point lookups and range queries can be made from several threads at once.
+ */
+public class SensorIndex {
+
+    private static final int EMPTY = -1;
+    //average number of sensors the grid aims to put in one cell
+    private static final int SENSORS_PER_CELL = 2;
+
+    private long[] keys;
+    private int[] values;
+    private int size = 0;
+
+    //coordinates by id, used to build the grid
+    private int[] xs = new int[16];
+    private int[] ys = new int[16];
+
+    //grid built on demand, cellStart has one more entry than there are cells
+    private int[] cellStart = null;
+    private int[] cellIds;
+    private int columns, rows;
+    private int originX, originY;
+    private int cellSize;
+
+    /**
+     * Creates an empty index
+     */
+    public SensorIndex(){
+        keys = new long[16];
+        values = new int[16];
+        Arrays.fill(values, EMPTY);
+    }
+
+    /**
+     * Adds the id of a Sensor at the given location. A second Sensor at the same location replaces the first one
+     * @param x x-coordinate of the Sensor
+     * @param y y-coordinate of the Sensor
+     * @param id id of the Sensor within its Graph
+     */
+    public void put(int x, int y, int id){
+        if((size + 1) * 2 > keys.length){
+            resize(keys.length * 2);
+        }
+        if(insert(pack(x, y), id)){
+            size++;
+        }
+        if(id >= xs.length){
+            int length = Math.max(xs.length * 2, id + 1);
+            xs = Arrays.copyOf(xs, length);
+            ys = Arrays.copyOf(ys, length);
+        }
+        xs[id] = x;
+        ys[id] = y;
+        cellStart = null;
+    }
+
+    /**
+     * Finds the id of the Sensor at the given location
+     * @param x x-coordinate to look up
+     * @param y y-coordinate to look up
+     * @return the id of the Sensor, or -1 if there is no Sensor at that location
+     */
+    public int get(int x, int y){
+        long key = pack(x, y);
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while(values[slot] != EMPTY){
+            if(keys[slot] == key){
+                return values[slot];
+            }
+            slot = (slot + 1) & mask;
+        }
+        return EMPTY;
+    }
+
+    /**
+     * Finds the ids of every Sensor within the given distance of a point, the edge of the circle included
+     * @param x x-coordinate of the center
+     * @param y y-coordinate of the center
+     * @param radius distance from the center
+     * @return the ids of the Sensors found, in no particular order
+     */
+    public synchronized int[] within(int x, int y, double radius){
+        if(size == 0 || radius < 0){
+            return new int[0];
+        }
+        if(cellStart == null){
+            buildGrid();
+        }
+
+        int fromColumn = clamp((int) Math.floor((x - radius - originX) / cellSize), columns);
+        int toColumn = clamp((int) Math.floor((x + radius - originX) / cellSize), columns);
+        int fromRow = clamp((int) Math.floor((y - radius - originY) / cellSize), rows);
+        int toRow = clamp((int) Math.floor((y + radius - originY) / cellSize), rows);
+
+        double radiusSquared = radius * radius;
+        int[] found = new int[8];
+        int count = 0;
+        for(int row = fromRow; row <= toRow; row++){
+            for(int column = fromColumn; column <= toColumn; column++){
+                int cell = row * columns + column;
+                for(int i = cellStart[cell]; i < cellStart[cell + 1]; i++){
+                    int id = cellIds[i];
+                    double dx = xs[id] - (double) x;
+                    double dy = ys[id] - (double) y;
+                    if(dx * dx + dy * dy <= radiusSquared){
+                        if(count == found.length){
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = id;
+                    }
+                }
+            }
+        }
+        return Arrays.copyOf(found, count);
+    }
+
+    /**
+     * Returns the number of locations in the index
+     * @return int number of Sensors
+     */
+    public int size(){
+        return this.size;
+    }
+
+    /**
+     * Buckets every id into the grid cell its coordinates fall in. The cell size is picked from the bounding box so
+     * that each cell holds a couple of Sensors on average
+     */
+    private void buildGrid(){
+        int count = 0;
+        int minX = Integer.MAX_VALUE, minY = Integer.MAX_VALUE;
+        int maxX = Integer.MIN_VALUE, maxY = Integer.MIN_VALUE;
+        for(int slot = 0; slot < keys.length; slot++){
+            if(values[slot] != EMPTY){
+                int id = values[slot];
+                minX = Math.min(minX, xs[id]);
+                minY = Math.min(minY, ys[id]);
+                maxX = Math.max(maxX, xs[id]);
+                maxY = Math.max(maxY, ys[id]);
+                count++;
+            }
+        }
+
+        double width = (double) maxX - minX + 1;
+        double height = (double) maxY - minY + 1;
+        cellSize = (int) Math.max(1, Math.ceil(Math.sqrt(width * height * SENSORS_PER_CELL / count)));
+        columns = (int) Math.ceil(width / cellSize);
+        rows = (int) Math.ceil(height / cellSize);
+        originX = minX;
+        originY = minY;
+
+        //counting sort of the ids into the cells
+        cellStart = new int[columns * rows + 1];
+        for(int slot = 0; slot < keys.length; slot++){
+            if(values[slot] != EMPTY){
+                cellStart[cellOf(values[slot]) + 1]++;
+            }
+        }
+        for(int cell = 0; cell < columns * rows; cell++){
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        cellIds = new int[count];
+        int[] next = Arrays.copyOf(cellStart, columns * rows);
+        for(int slot = 0; slot < keys.length; slot++){
+            if(values[slot] != EMPTY){
+                cellIds[next[cellOf(values[slot])]++] = values[slot];
+            }
+        }
+    }
+
+    private int cellOf(int id){
+        int column = (xs[id] - originX) / cellSize;
+        int row = (ys[id] - originY) / cellSize;
+        return row * columns + column;
+    }
+
+    private static int clamp(int value, int limit){
+        return Math.max(0, Math.min(limit - 1, value));
+    }
+
+    /**
+     * Puts a key into the table
+     * @return true if the key was not in the table yet
+     */
+    private boolean insert(long key, int id){
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while(values[slot] != EMPTY){
+            if(keys[slot] == key){
+                values[slot] = id;
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = id;
+        return true;
+    }
+
+    private void resize(int capacity){
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(values, EMPTY);
+        for(int slot = 0; slot < oldKeys.length; slot++){
+            if(oldValues[slot] != EMPTY){
+                insert(oldKeys[slot], oldValues[slot]);
+            }
+        }
+    }
+
+    /**
+     * Packs a pair of coordinates into one long
+     * @param x x-coordinate
+     * @param y y-coordinate
+     * @return long holding both coordinates
+     */
+    public static long pack(int x, int y){
+        return ((long) x << 32) | (y & 0xffffffffL);
+    }
+
+    /**
+     * Spreads the bits of a packed key so that neighboring coordinates do not land in neighboring slots
+     */
+    private static int mix(long key){
+        key *= 0x9E3779B97F4A7C15L;
+        return (int) (key ^ (key >>> 32));
+    }
+}
@@ -0,0 +1,366 @@
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Headless run of a configuration file on the discrete event Scheduler. The Sensors, Agents and Base Station behave
+ * exactly as they do on screen, but the spread and walk delays pass in virtual time, so a run takes as long as the
+ * CPU needs to get through its events. The same seed always gives the same run.
+ *
+ * Usage: java Simulation configFile [seed] [runs] [flood|perimeter] [walk strategy] [trace file]
+ */
+public class Simulation {
+
+    //virtual time after which a run is given up, in case the fire never reaches the base station
+    private static final long TIME_LIMIT_MILLIS = TimeUnit.HOURS.toMillis(24);
+
+    private final Graph graph;
+    private final Agent agent;
+    private final Sensor fireStart;
+    private int agentCap = AgentPool.UNLIMITED;
+    private CloningStrategy cloning = CloningStrategy.FLOOD;
+    private WalkStrategy walk = WalkStrategy.NON_BACKTRACKING;
+    private File traceFile = null;
+    private long checkpointMillis = 0;
+    private File checkpointFile = null;
+    private final List<Checkpoint.Stats> checkpointStats = new ArrayList<>();
+    private Metrics metrics = null;
+
+    /**
+     * Loads a configuration file for one run
+     * @param fileName path of the configuration file
+     * @throws IOException if the file cannot be read
+     */
+    public Simulation(String fileName) throws IOException {
+        ConfigLoader loader = new ConfigLoader();
+        graph = new Graph();
+        loader.load(fileName, graph);
+        agent = loader.getAgent();
+        fireStart = graph.findSensor(loader.getFireStart()[0], loader.getFireStart()[1]);
+        if(agent == null || fireStart == null){
+            throw new IOException("The configuration file needs a station and a fire on existing nodes");
+        }
+    }
+
+    /**
+     * Sets up a run on fresh Sensors with the topology of the given Graph, which is shared and left untouched. The
+     * first Agent is put on the Base Station the same way the loader does
+     * @param topology frozen Graph to copy the Sensors of
+     * @param fireStartId id of the Sensor the fire starts on
+     */
+    public Simulation(Graph topology, int fireStartId){
+        graph = topology.instantiate();
+        Sensor baseStation = graph.getBaseStation();
+        if(baseStation == null){
+            throw new IllegalArgumentException("The graph has no base station");
+        }
+        agent = new Agent("1", baseStation, false);
+        baseStation.agentMove(agent);
+        fireStart = graph.getSensorById(fireStartId);
+    }
+
+    /**
+     * Runs the simulation until the Base Station is on fire or the time limit passes
+     * @param seed seed for every random choice of the run
+     * @return Result of the run
+     */
+    public Result run(long seed){
+        long wallStart = System.nanoTime();
+        Scheduler scheduler = new Scheduler(Scheduler.Mode.DISCRETE_EVENT, seed);
+        scheduler.setAgentCap(agentCap);
+        scheduler.setCloningStrategy(cloning);
+        scheduler.setWalkStrategy(walk);
+        Trace trace = startTrace(scheduler);
+        graph.startThreadsForAllSensors(scheduler);
+        scheduler.start(agent);
+        fireStart.getQ().offer(Message.FIRE);
+        return finish(scheduler, seed, trace, wallStart);
+    }
+
+    /**
+     * Carries on a run from a checkpoint taken by an earlier run, on this simulation's Sensors. The Result is the
+     * one the run would have had if it had never stopped, apart from the wall clock time
+     * @param checkpoint Checkpoint of a run of the same configuration
+     * @return Result of the run
+     */
+    public Result resume(Checkpoint checkpoint){
+        long wallStart = System.nanoTime();
+        Scheduler scheduler = new Scheduler(Scheduler.Mode.DISCRETE_EVENT, checkpoint.getSeed());
+        checkpoint.restore(graph, scheduler);
+        Trace trace = startTrace(scheduler);
+        return finish(scheduler, checkpoint.getSeed(), trace, wallStart);
+    }
+
+    private Trace startTrace(Scheduler scheduler){
+        if(traceFile == null){
+            return null;
+        }
+        try{
+            Trace trace = new Trace(traceFile, scheduler, graph.getSizeOfGraph());
+            trace.recordState(graph);
+            graph.setTrace(trace);
+            return trace;
+        } catch(IOException io){
+            System.err.println(io);
+            return null;
+        }
+    }
+
+    /**
+     * Runs the events until the Base Station is on fire or the time limit passes, stopping every checkpoint interval
+     * of virtual time to take a checkpoint, and gathers the Result
+     */
+    private Result finish(Scheduler scheduler, long seed, Trace trace, long wallStart){
+        Sensor baseStation = graph.getBaseStation();
+        boolean reached;
+        metrics = scheduler.getMetrics();
+        checkpointStats.clear();
+        if(checkpointMillis <= 0){
+            reached = scheduler.runUntil(baseStation::isDead, TIME_LIMIT_MILLIS);
+        }
+        else{
+            //checkpoints are written one at a time on another thread while the run carries on
+            ExecutorService writer = Executors.newSingleThreadExecutor();
+            long next = TimeUnit.NANOSECONDS.toMillis(scheduler.now()) + checkpointMillis;
+            while(true){
+                reached = scheduler.runUntil(baseStation::isDead, Math.min(next, TIME_LIMIT_MILLIS));
+                if(reached || next >= TIME_LIMIT_MILLIS || scheduler.nextEventTime() < 0){
+                    break;
+                }
+                Checkpoint checkpoint = Checkpoint.capture(graph, scheduler, seed);
+                checkpointStats.add(checkpoint.getStats());
+                writer.execute(() -> {
+                    try{
+                        checkpoint.write(checkpointFile);
+                    } catch(IOException io){
+                        System.err.println(io);
+                    }
+                });
+                next += checkpointMillis;
+            }
+            writer.shutdown();
+            try{
+                writer.awaitTermination(1, TimeUnit.HOURS);
+            } catch(InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        BaseStation station = (BaseStation) baseStation;
+        EventLog log = station.getEventLog();
+        Set<String> distinct = new HashSet<>();
+        EventLog.Cursor cursor = log.cursor();
+        while(cursor.hasNext()){
+            distinct.add(station.describe(cursor.next()));
+        }
+        int entries = (int) log.size();
+        log.close();
+        if(trace != null){
+            graph.setTrace(null);
+            trace.close();
+        }
+        return new Result(seed, reached, scheduler.now(), scheduler.getAgentsStarted(), scheduler.getClonesStarted(), entries,
+                distinct.size(), scheduler.getAgentPool().getPeak(), scheduler.getEventsRun(), System.nanoTime() - wallStart);
+    }
+
+    /**
+     * Caps the number of Agents alive at once in the following runs
+     * @param cap largest number of live Agents, AgentPool.UNLIMITED for no cap
+     */
+    public void setAgentCap(int cap){
+        this.agentCap = cap;
+    }
+
+    /**
+     * Sets which Sensors the Agents copy themselves onto in the following runs
+     * @param strategy CloningStrategy to use, FLOOD unless set
+     */
+    public void setCloningStrategy(CloningStrategy strategy){
+        this.cloning = strategy;
+    }
+
+    /**
+     * Sets how the first Agent walks while looking for the fire in the following runs
+     * @param strategy WalkStrategy to use, NON_BACKTRACKING unless set
+     */
+    public void setWalkStrategy(WalkStrategy strategy){
+        this.walk = strategy;
+    }
+
+    /**
+     * Records the following runs to a trace file that TracePlayer can play back
+     * @param file file to write, replaced by every run, or null not to record
+     */
+    public void setTraceFile(File file){
+        this.traceFile = file;
+    }
+
+    /**
+     * Takes a checkpoint of the following runs every given interval of virtual time, each one replacing the last
+     * in the file, so a run can be carried on with resume() from where it was
+     * @param everyMillis virtual time between checkpoints in milliseconds, 0 for none
+     * @param file file to write the checkpoints to
+     */
+    public void setCheckpoints(long everyMillis, File file){
+        this.checkpointMillis = everyMillis;
+        this.checkpointFile = file;
+    }
+
+    /**
+     * Returns the size and cost of the checkpoints taken by the last run, in the order they were taken
+     * @return List of Checkpoint.Stats, complete once the run has returned
+     */
+    public List<Checkpoint.Stats> getCheckpointStats(){
+        return new ArrayList<>(checkpointStats);
+    }
+
+    /**
+     * Returns the Metrics recorded by the last run
+     * @return Metrics of the last run, or null before the first one
+     */
+    public Metrics getMetrics(){
+        return this.metrics;
+    }
+
+    /**
+     * Retrieves the Sensor the fire starts on
+     * @return Sensor where the fire starts
+     */
+    public Sensor getFireStart(){
+        return this.fireStart;
+    }
+
+    /**
+     * Retrieves the Graph of this simulation
+     * @return Graph loaded from the configuration file
+     */
+    public Graph getGraph(){
+        return this.graph;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 1){
+            System.err.println("Usage: java Simulation configFile [seed] [runs] [flood|perimeter] [walk strategy] [trace file]");
+            System.exit(2);
+        }
+        long seed = args.length > 1 ? Long.parseLong(args[1]) : 1;
+        int runs = args.length > 2 ? Integer.parseInt(args[2]) : 1;
+        CloningStrategy cloning = args.length > 3 ? CloningStrategy.parse(args[3]) : CloningStrategy.FLOOD;
+        WalkStrategy walk = args.length > 4 ? WalkStrategy.parse(args[4]) : WalkStrategy.NON_BACKTRACKING;
+
+        System.out.println(Result.HEADER);
+        for(int i = 0; i < runs; i++){
+            Simulation simulation = new Simulation(args[0]);
+            simulation.setCloningStrategy(cloning);
+            simulation.setWalkStrategy(walk);
+            if(args.length > 5){
+                //one trace per run, named after the seed when there are several
+                simulation.setTraceFile(new File(runs == 1 ? args[5] : args[5] + "." + (seed + i)));
+            }
+            System.out.println(simulation.run(seed + i));
+        }
+    }
+
+    /**
+     * What a single run produced
+     */
+    public static class Result {
+
+        static final String HEADER = "seed,reachedBase,baseFireMillis,agentsCreated,logEntries,distinctLogEntries," +
+                "peakLiveAgents,events,wallMillis";
+
+        private final long seed;
+        private final boolean reachedBase;
+        private final long baseFireNanos;
+        private final int agents;
+        private final int clones;
+        private final int logEntries;
+        private final int distinctLogEntries;
+        private final int peakLiveAgents;
+        private final long events;
+        private final long wallNanos;
+
+        Result(long seed, boolean reachedBase, long baseFireNanos, int agents, int clones, int logEntries,
+               int distinctLogEntries, int peakLiveAgents, long events, long wallNanos){
+            this.seed = seed;
+            this.reachedBase = reachedBase;
+            this.baseFireNanos = baseFireNanos;
+            this.agents = agents;
+            this.clones = clones;
+            this.logEntries = logEntries;
+            this.distinctLogEntries = distinctLogEntries;
+            this.peakLiveAgents = peakLiveAgents;
+            this.events = events;
+            this.wallNanos = wallNanos;
+        }
+
+        /**
+         * Returns true if the fire reached the Base Station before the time limit
+         * @return boolean for whether the Base Station caught on fire
+         */
+        public boolean reachedBase(){
+            return this.reachedBase;
+        }
+
+        /**
+         * Virtual time at which the Base Station caught on fire, or the time the run stopped
+         * @return long time in milliseconds
+         */
+        public long getBaseFireMillis(){
+            return TimeUnit.NANOSECONDS.toMillis(baseFireNanos);
+        }
+
+        /**
+         * Number of Agents started during the run, the first one included
+         * @return int number of Agents
+         */
+        public int getAgentsCreated(){
+            return this.agents;
+        }
+
+        /**
+         * Number of Agents started as copies onto alerted Sensors, each of which should reach the Base Station log.
+         * The Agents that walk to find the fire are not copies
+         * @return int number of copies
+         */
+        public int getClonesCreated(){
+            return this.clones;
+        }
+
+        /**
+         * Number of entries in the Base Station log, copies of the same message included
+         * @return int number of entries
+         */
+        public int getLogEntries(){
+            return this.logEntries;
+        }
+
+        /**
+         * Number of different messages that reached the Base Station log
+         * @return int number of distinct entries
+         */
+        public int getDistinctLogEntries(){
+            return this.distinctLogEntries;
+        }
+
+        /**
+         * Largest number of Agents that were alive at once during the run
+         * @return int peak of live Agents
+         */
+        public int getPeakLiveAgents(){
+            return this.peakLiveAgents;
+        }
+
+        @Override
+        public String toString(){
+            return seed + "," + reachedBase + "," + getBaseFireMillis() + "," + agents + "," + logEntries + "," +
+                    distinctLogEntries + "," + peakLiveAgents + "," + events + "," + TimeUnit.NANOSECONDS.toMillis(wallNanos);
+        }
+    }
+}
@@ -0,0 +1,29 @@
+/**
+ * States a Sensor goes through. A Sensor only ever moves forward through them, from normal to alert when a neighbor
+ * catches on fire, to fire, and to dead once it can no longer do anything, so it never goes back to an earlier state.
+ * A state can be skipped, a Sensor can catch on fire without having been alerted.
+ */
+public enum Status {
+    NORMAL,
+    ALERT,
+    FIRE,
+    DEAD;
+
+    /**
+     * Returns true if this state is the given one or comes after it
+     * @param other state to compare to
+     * @return boolean for whether this state is at least as far along as the other
+     */
+    public boolean isAtLeast(Status other){
+        return compareTo(other) >= 0;
+    }
+
+    /**
+     * The name of the state in lower case, which is how the status of a Sensor has always been reported
+     * @return String such as "alert"
+     */
+    @Override
+    public String toString(){
+        return name().toLowerCase();
+    }
+}
@@ -0,0 +1,415 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Random;
+
+/**
+ * Writes synthetic configuration files, in the same node / edge / station / fire format the loader reads, for load
+ * testing with graphs far bigger than the hand written ones.
+ *
+ * GRID is a square lattice, RING joins every node to the degree / 2 nodes that follow it on a ring, CHAIN is one long
+ * path laid out as a serpentine, GEOMETRIC joins random points that are closer than the radius giving about the
+ * requested average degree (a little less, since nodes near the border have fewer neighbors), and SCALE_FREE grows
+ * a Barabasi-Albert graph where every new node attaches to degree / 2 nodes picked in proportion to their degree.
+ * Every node gets its own integer coordinates, and the same family, size, degree and seed always give the same file.
+ * Geometric graphs are not guaranteed to be connected.
+ *
+ * Usage: java TopologyGenerator family nodes degree seed output [station placement] [fire placement]
+ * where the placements are corner, center, random or farthest (fire only, the node furthest from the station).
+ */
+public class TopologyGenerator {
+
+    public enum Family {
+        GRID, RING, CHAIN, GEOMETRIC, SCALE_FREE
+    }
+
+    public enum Placement {
+        CORNER, CENTER, RANDOM, FARTHEST
+    }
+
+    private final Family family;
+    private final int nodes;
+    private final int degree;
+    private final Random random;
+    private Placement stationPlacement = Placement.CORNER;
+    private Placement firePlacement = Placement.FARTHEST;
+
+    private int[] xs;
+    private int[] ys;
+    private IntList edges;
+
+    /**
+     * Sets up a generator
+     * @param family shape of the graph
+     * @param nodes number of nodes
+     * @param degree average number of neighbors, ignored by GRID and CHAIN
+     * @param seed seed of every random choice
+     */
+    public TopologyGenerator(Family family, int nodes, int degree, long seed){
+        if(nodes < 2){
+            throw new IllegalArgumentException("A graph needs at least two nodes");
+        }
+        this.family = family;
+        this.nodes = nodes;
+        this.degree = Math.max(1, degree);
+        this.random = new Random(seed);
+    }
+
+    /**
+     * Sets where the Base Station goes
+     * @param placement CORNER, CENTER or RANDOM
+     * @return this generator
+     */
+    public TopologyGenerator stationAt(Placement placement){
+        if(placement == Placement.FARTHEST){
+            throw new IllegalArgumentException("The station cannot be placed relative to the fire");
+        }
+        this.stationPlacement = placement;
+        return this;
+    }
+
+    /**
+     * Sets where the fire starts
+     * @param placement CORNER, CENTER, RANDOM or FARTHEST from the station
+     * @return this generator
+     */
+    public TopologyGenerator fireAt(Placement placement){
+        this.firePlacement = placement;
+        return this;
+    }
+
+    /**
+     * Generates the graph and writes it to a configuration file
+     * @param fileName path of the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void write(String fileName) throws IOException {
+        generate();
+        int station = place(stationPlacement, -1);
+        int fire = place(firePlacement, station);
+        if(fire == station){
+            fire = (station + 1 + random.nextInt(nodes - 1)) % nodes;
+        }
+
+        try(Output out = new Output(new BufferedOutputStream(new FileOutputStream(fileName), 1 << 16))){
+            for(int i = 0; i < nodes; i++){
+                out.line("node ", xs[i], ys[i]);
+            }
+            out.line("station ", xs[station], ys[station]);
+            for(int i = 0; i < edges.size(); i += 2){
+                int from = edges.get(i);
+                int to = edges.get(i + 1);
+                out.line("edge ", xs[from], ys[from], xs[to], ys[to]);
+            }
+            out.line("fire ", xs[fire], ys[fire]);
+        }
+    }
+
+    private void generate(){
+        xs = new int[nodes];
+        ys = new int[nodes];
+        edges = new IntList();
+        int side = (int) Math.ceil(Math.sqrt(nodes));
+
+        switch(family){
+            case GRID:
+                for(int i = 0; i < nodes; i++){
+                    xs[i] = i % side;
+                    ys[i] = i / side;
+                    if(i % side + 1 < side && i + 1 < nodes){
+                        addEdge(i, i + 1);
+                    }
+                    if(i + side < nodes){
+                        addEdge(i, i + side);
+                    }
+                }
+                break;
+            case RING:
+                for(int i = 0; i < nodes; i++){
+                    xs[i] = i % side;
+                    ys[i] = i / side;
+                    for(int step = 1; step <= degree / 2 && step < nodes; step++){
+                        addEdge(i, (i + step) % nodes);
+                    }
+                }
+                break;
+            case CHAIN:
+                for(int i = 0; i < nodes; i++){
+                    int row = i / side;
+                    xs[i] = row % 2 == 0 ? i % side : side - 1 - i % side;
+                    ys[i] = row;
+                    if(i > 0){
+                        addEdge(i - 1, i);
+                    }
+                }
+                break;
+            case GEOMETRIC:
+                int length = scatter();
+                connectWithin(Math.sqrt(degree * (double) length * length / (Math.PI * nodes)));
+                break;
+            case SCALE_FREE:
+                scatter();
+                attachPreferentially(Math.max(1, degree / 2));
+                break;
+        }
+    }
+
+    /**
+     * Puts every node on its own random cell of a square about twice as large as the number of nodes
+     * @return the side of the square
+     */
+    private int scatter(){
+        int length = (int) Math.ceil(Math.sqrt(2.0 * nodes));
+        BitSet taken = new BitSet(length * length);
+        for(int i = 0; i < nodes; i++){
+            int cell;
+            do{
+                cell = random.nextInt(length * length);
+            } while(taken.get(cell));
+            taken.set(cell);
+            xs[i] = cell % length;
+            ys[i] = cell / length;
+        }
+        return length;
+    }
+
+    /**
+     * Joins every pair of nodes closer than the radius, bucketing the nodes in cells as wide as the radius so that
+     * only the nine cells around a node have to be checked
+     * @param radius largest distance of an edge
+     */
+    private void connectWithin(double radius){
+        int cellSize = (int) Math.max(1, Math.ceil(radius));
+        int maxX = 0, maxY = 0;
+        for(int i = 0; i < nodes; i++){
+            maxX = Math.max(maxX, xs[i]);
+            maxY = Math.max(maxY, ys[i]);
+        }
+        int columns = maxX / cellSize + 1;
+        int rows = maxY / cellSize + 1;
+        int[] cellStart = new int[columns * rows + 1];
+        for(int i = 0; i < nodes; i++){
+            cellStart[(ys[i] / cellSize) * columns + xs[i] / cellSize + 1]++;
+        }
+        for(int cell = 0; cell < columns * rows; cell++){
+            cellStart[cell + 1] += cellStart[cell];
+        }
+        int[] cellNodes = new int[nodes];
+        int[] next = Arrays.copyOf(cellStart, columns * rows);
+        for(int i = 0; i < nodes; i++){
+            cellNodes[next[(ys[i] / cellSize) * columns + xs[i] / cellSize]++] = i;
+        }
+
+        double radiusSquared = radius * radius;
+        for(int i = 0; i < nodes; i++){
+            int column = xs[i] / cellSize;
+            int row = ys[i] / cellSize;
+            for(int r = Math.max(0, row - 1); r <= Math.min(rows - 1, row + 1); r++){
+                for(int c = Math.max(0, column - 1); c <= Math.min(columns - 1, column + 1); c++){
+                    int cell = r * columns + c;
+                    for(int k = cellStart[cell]; k < cellStart[cell + 1]; k++){
+                        int j = cellNodes[k];
+                        //each pair once
+                        if(j > i){
+                            double dx = xs[i] - xs[j];
+                            double dy = ys[i] - ys[j];
+                            if(dx * dx + dy * dy <= radiusSquared){
+                                addEdge(i, j);
+                            }
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Barabasi-Albert growth. The first nodes form a clique, and every later node is joined to distinct targets
+     * picked from the list of edge ends, where a node appears once per edge it has
+     * @param links number of edges every new node brings
+     */
+    private void attachPreferentially(int links){
+        int seedNodes = Math.min(nodes, links + 1);
+        IntList ends = new IntList();
+        for(int i = 0; i < seedNodes; i++){
+            for(int j = i + 1; j < seedNodes; j++){
+                addEdge(i, j);
+                ends.add(i);
+                ends.add(j);
+            }
+        }
+        int[] targets = new int[links];
+        for(int i = seedNodes; i < nodes; i++){
+            int chosen = 0;
+            while(chosen < Math.min(links, i)){
+                int target = ends.get(random.nextInt(ends.size()));
+                boolean duplicate = false;
+                for(int k = 0; k < chosen; k++){
+                    if(targets[k] == target){
+                        duplicate = true;
+                        break;
+                    }
+                }
+                if(!duplicate){
+                    targets[chosen++] = target;
+                }
+            }
+            for(int k = 0; k < chosen; k++){
+                addEdge(i, targets[k]);
+                ends.add(i);
+                ends.add(targets[k]);
+            }
+        }
+    }
+
+    private void addEdge(int from, int to){
+        edges.add(from);
+        edges.add(to);
+    }
+
+    /**
+     * Picks a node for the station or the fire
+     * @param placement where to put it
+     * @param station the station node, only used by FARTHEST
+     * @return int index of the node
+     */
+    private int place(Placement placement, int station){
+        switch(placement){
+            case RANDOM:
+                return random.nextInt(nodes);
+            case FARTHEST:
+                return farthestFrom(station);
+            case CENTER:
+                long minX = Long.MAX_VALUE, minY = Long.MAX_VALUE, maxX = Long.MIN_VALUE, maxY = Long.MIN_VALUE;
+                for(int i = 0; i < nodes; i++){
+                    minX = Math.min(minX, xs[i]);
+                    minY = Math.min(minY, ys[i]);
+                    maxX = Math.max(maxX, xs[i]);
+                    maxY = Math.max(maxY, ys[i]);
+                }
+                return closestTo((minX + maxX) / 2.0, (minY + maxY) / 2.0);
+            default:
+                return closestTo(Integer.MIN_VALUE, Integer.MIN_VALUE);
+        }
+    }
+
+    private int closestTo(double x, double y){
+        int best = 0;
+        double bestDistance = Double.MAX_VALUE;
+        for(int i = 0; i < nodes; i++){
+            double dx = xs[i] - x;
+            double dy = ys[i] - y;
+            double distance = dx * dx + dy * dy;
+            if(distance < bestDistance){
+                bestDistance = distance;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Breadth first search from a node over the generated edges
+     * @param start node to start from
+     * @return the last node reached, which is as many hops away as any node can be
+     */
+    private int farthestFrom(int start){
+        int[] offsets = new int[nodes + 1];
+        for(int i = 0; i < edges.size(); i++){
+            offsets[edges.get(i) + 1]++;
+        }
+        for(int i = 0; i < nodes; i++){
+            offsets[i + 1] += offsets[i];
+        }
+        int[] adjacency = new int[edges.size()];
+        int[] next = Arrays.copyOf(offsets, nodes);
+        for(int i = 0; i < edges.size(); i += 2){
+            adjacency[next[edges.get(i)]++] = edges.get(i + 1);
+            adjacency[next[edges.get(i + 1)]++] = edges.get(i);
+        }
+
+        BitSet visited = new BitSet(nodes);
+        ArrayDeque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        visited.set(start);
+        int last = start;
+        while(!queue.isEmpty()){
+            last = queue.poll();
+            for(int k = offsets[last]; k < offsets[last + 1]; k++){
+                if(!visited.get(adjacency[k])){
+                    visited.set(adjacency[k]);
+                    queue.add(adjacency[k]);
+                }
+            }
+        }
+        return last;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if(args.length < 5){
+            System.err.println("Usage: java TopologyGenerator grid|ring|chain|geometric|scale_free nodes degree seed " +
+                    "output [corner|center|random] [corner|center|random|farthest]");
+            System.exit(2);
+        }
+        TopologyGenerator generator = new TopologyGenerator(Family.valueOf(args[0].toUpperCase()),
+                Integer.parseInt(args[1]), Integer.parseInt(args[2]), Long.parseLong(args[3]));
+        if(args.length > 5){
+            generator.stationAt(Placement.valueOf(args[5].toUpperCase()));
+        }
+        if(args.length > 6){
+            generator.fireAt(Placement.valueOf(args[6].toUpperCase()));
+        }
+        generator.write(args[4]);
+    }
+
+    /**
+     * Writes the lines of the file straight as bytes, without making a String per line
+     */
+    private static class Output implements AutoCloseable {
+
+        private final OutputStream out;
+        private final byte[] digits = new byte[11];
+
+        private Output(OutputStream out){
+            this.out = out;
+        }
+
+        private void line(String keyword, int... numbers) throws IOException {
+            for(int i = 0; i < keyword.length(); i++){
+                out.write(keyword.charAt(i));
+            }
+            for(int i = 0; i < numbers.length; i++){
+                if(i > 0){
+                    out.write(' ');
+                }
+                number(numbers[i]);
+            }
+            out.write('\n');
+        }
+
+        private void number(int value) throws IOException {
+            long remaining = value;
+            if(remaining < 0){
+                out.write('-');
+                remaining = -remaining;
+            }
+            int count = 0;
+            do{
+                digits[count++] = (byte) ('0' + remaining % 10);
+                remaining /= 10;
+            } while(remaining > 0);
+            while(count > 0){
+                out.write(digits[--count]);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+}
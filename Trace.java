@@ -0,0 +1,166 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Records a run to a binary file that TracePlayer can play back without running the simulation again.
+ *
+ * Every status change of a Sensor, every message a Sensor sends to another and every time an Agent moves onto or off a
+ * Sensor is one record of RECORD_BYTES: the time since the trace started in nanoseconds, the kind of record, one byte
+ * of detail and two Sensor ids. The time is read under the same lock the record is written under, so the records of
+ * a file are in time order whatever thread wrote them. The status and Agent of a Sensor are read under that lock too
+ * rather than passed in, so when two changes to a Sensor race the later record always has the later state. Records
+ * are gathered in a buffer and written out when it is full and when the trace is closed.
+ *
+ * The file starts with MAGIC and the number of Sensors of the Graph.
+ */
+public class Trace {
+
+    /**
+     * First int of every trace file
+     */
+    public static final int MAGIC = 0x54524331;
+
+    /**
+     * Bytes before the first record: MAGIC and the number of Sensors
+     */
+    public static final int HEADER_BYTES = 8;
+
+    /**
+     * Bytes of a record: time, kind, detail and two Sensor ids
+     */
+    public static final int RECORD_BYTES = 8 + 1 + 1 + 4 + 4;
+
+    /**
+     * Kinds of record. The detail of STATUS is the new Status, of AGENT 1 if an Agent is on the Sensor and 0 if not,
+     * and of HOP the Message.Type. HOP is the only kind that uses the second Sensor id, the Sensor the message went to
+     */
+    public static final byte STATUS = 0;
+    public static final byte AGENT = 1;
+    public static final byte HOP = 2;
+
+    private static final int BUFFER_BYTES = RECORD_BYTES * 4096;
+
+    private final Scheduler scheduler;
+    private final long origin;
+    private final FileOutputStream out;
+    private final FileChannel channel;
+    private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_BYTES);
+    private long records = 0;
+    private boolean closed = false;
+
+    /**
+     * Creates a trace file, replacing any file with the same name
+     * @param file file to write to
+     * @param scheduler Scheduler of the run, its clock times the records
+     * @param sensors number of Sensors of the Graph
+     * @throws IOException if the file cannot be created
+     */
+    public Trace(File file, Scheduler scheduler, int sensors) throws IOException {
+        this.scheduler = scheduler;
+        this.origin = scheduler.now();
+        this.out = new FileOutputStream(file);
+        this.channel = out.getChannel();
+        buffer.putInt(MAGIC);
+        buffer.putInt(sensors);
+    }
+
+    /**
+     * Records the state every Sensor of the Graph is in, for the changes made before the trace started such as the
+     * first Agent
+     * @param graph Graph of the run
+     */
+    public void recordState(Graph graph){
+        for(int id = 0; id < graph.getSizeOfGraph(); id++){
+            Sensor sensor = graph.getSensorById(id);
+            if(sensor.getStatus() != Status.NORMAL){
+                status(sensor);
+            }
+            if(sensor.agentPresent()){
+                agent(sensor);
+            }
+        }
+    }
+
+    /**
+     * Records the status a Sensor moved to
+     * @param sensor Sensor whose status changed
+     */
+    public synchronized void status(Sensor sensor){
+        record(STATUS, sensor.getStatus().ordinal(), sensor.getId(), -1);
+    }
+
+    /**
+     * Records an Agent arriving on or leaving a Sensor
+     * @param sensor Sensor whose Agent changed
+     */
+    public synchronized void agent(Sensor sensor){
+        record(AGENT, sensor.agentPresent() ? 1 : 0, sensor.getId(), -1);
+    }
+
+    /**
+     * Records a message sent from a Sensor to another
+     * @param from id of the sending Sensor
+     * @param to id of the receiving Sensor
+     * @param type Type of the message
+     */
+    public void hop(int from, int to, Message.Type type){
+        record(HOP, type.ordinal(), from, to);
+    }
+
+    /**
+     * Returns the number of records written so far
+     * @return long number of records
+     */
+    public synchronized long getRecords(){
+        return records;
+    }
+
+    /**
+     * Writes out the records still in the buffer and closes the file. Records made afterwards are ignored
+     */
+    public synchronized void close(){
+        if(closed){
+            return;
+        }
+        try{
+            flush();
+            out.close();
+        } catch(IOException io){
+            System.err.println(io);
+        }
+        closed = true;
+    }
+
+    private synchronized void record(byte kind, int detail, int first, int second){
+        if(closed){
+            return;
+        }
+        if(buffer.remaining() < RECORD_BYTES){
+            try{
+                flush();
+            } catch(IOException io){
+                //stop recording rather than fail the run
+                System.err.println(io);
+                closed = true;
+                return;
+            }
+        }
+        buffer.putLong(scheduler.now() - origin);
+        buffer.put(kind);
+        buffer.put((byte) detail);
+        buffer.putInt(first);
+        buffer.putInt(second);
+        records++;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while(buffer.hasRemaining()){
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,315 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * Plays back a file written by Trace: the status of every Sensor and where the Agents are, at any time of the run.
+ *
+ * Opening a trace reads it once and keeps a key frame, a copy of the whole state, every KEYFRAME_RECORDS records, or
+ * every eight records per Sensor on big graphs so the key frames take far less memory than the trace.
+ * Seeking to a time starts from the last key frame before it, or from the current state when that is closer, and
+ * applies the records in between, so a jump anywhere in a long run only reads a few thousand records. Play moves the
+ * time forward with the wall clock, times the speed.
+ *
+ * Every Sensor whose status or Agent differs after a seek is passed to the listener, the same way a running Graph
+ * reports its changes. A player is meant to be used from one thread, the JavaFX thread for the Display.
+ */
+public class TracePlayer {
+
+    /**
+     * Smallest number of records between two key frames
+     */
+    public static final int KEYFRAME_RECORDS = 1 << 16;
+
+    //records mapped at a time, so a mapping stays under 2 GB
+    private static final int REGION_RECORDS = 1 << 24;
+    private static final Status[] STATUSES = Status.values();
+
+    private final int sensors;
+    private final long records;
+    private final MappedByteBuffer[] regions;
+    private final long endTime;
+    private final long hops;
+    private final long keyframeRecords;
+
+    //key frames, in record order
+    private final List<Keyframe> keyframes = new ArrayList<>();
+
+    //state at the current time
+    private final byte[] status;
+    private final BitSet agents;
+    private long position = 0;
+    private long time = 0;
+    private long hopsPlayed = 0;
+
+    private IntConsumer listener = null;
+    private double speed = 1;
+    private boolean paused = false;
+    private long lastWall = -1;
+
+    /**
+     * Opens a trace file and builds its key frames
+     * @param file file written by Trace
+     * @throws IOException if the file cannot be read or is not a trace
+     */
+    public TracePlayer(File file) throws IOException {
+        try(RandomAccessFile access = new RandomAccessFile(file, "r")){
+            FileChannel channel = access.getChannel();
+            if(channel.size() < Trace.HEADER_BYTES || access.readInt() != Trace.MAGIC){
+                throw new IOException("Not a trace file: " + file);
+            }
+            sensors = access.readInt();
+            records = (channel.size() - Trace.HEADER_BYTES) / Trace.RECORD_BYTES;
+            int count = (int) ((records + REGION_RECORDS - 1) / REGION_RECORDS);
+            regions = new MappedByteBuffer[count];
+            for(int i = 0; i < count; i++){
+                long first = (long) i * REGION_RECORDS;
+                long length = Math.min(REGION_RECORDS, records - first) * Trace.RECORD_BYTES;
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        Trace.HEADER_BYTES + first * Trace.RECORD_BYTES, length);
+            }
+        }
+        status = new byte[sensors];
+        agents = new BitSet(sensors);
+
+        //one pass over the whole trace for the key frames
+        keyframeRecords = Math.max(KEYFRAME_RECORDS, 8L * sensors);
+        for(long i = 0; i < records; i++){
+            if(i % keyframeRecords == 0){
+                keyframes.add(new Keyframe(i, time, hopsPlayed, status.clone(), (BitSet) agents.clone()));
+            }
+            apply(i, null);
+        }
+        endTime = time;
+        hops = hopsPlayed;
+        restore(keyframes.isEmpty() ? new Keyframe(0, 0, 0, new byte[sensors], new BitSet()) : keyframes.get(0), null);
+    }
+
+    /**
+     * Sets the listener told about every Sensor that changes when the time moves
+     * @param listener IntConsumer taking the id of the changed Sensor, or null for none
+     */
+    public void setListener(IntConsumer listener){
+        this.listener = listener;
+    }
+
+    /**
+     * Moves to the given time of the run, forward or backward
+     * @param target nanoseconds since the trace started
+     */
+    public void seek(long target){
+        target = Math.max(0, Math.min(target, endTime));
+        Keyframe best = null;
+        int low = 0, high = keyframes.size() - 1;
+        while(low <= high){
+            int middle = (low + high) >>> 1;
+            if(keyframes.get(middle).time <= target){
+                best = keyframes.get(middle);
+                low = middle + 1;
+            }
+            else{
+                high = middle - 1;
+            }
+        }
+        //going back, or far enough forward that the key frame is closer than the current state
+        if(best != null && (target < time || best.record > position)){
+            restore(best, listener);
+        }
+        while(position < records && timeOf(position) <= target){
+            apply(position, listener);
+        }
+        time = target;
+    }
+
+    /**
+     * Moves the time forward by the wall clock time since the last call, times the speed. Called once per frame
+     */
+    public void play(){
+        long wall = System.nanoTime();
+        if(lastWall >= 0 && !paused){
+            seek(time + (long) ((wall - lastWall) * speed));
+        }
+        lastWall = wall;
+    }
+
+    /**
+     * Sets how many times faster than the run the playback goes
+     * @param speed factor on the wall clock, 1 plays back at the speed of the run
+     */
+    public void setSpeed(double speed){
+        this.speed = speed;
+    }
+
+    /**
+     * Returns how many times faster than the run the playback goes
+     * @return double speed factor
+     */
+    public double getSpeed(){
+        return this.speed;
+    }
+
+    /**
+     * Pauses the playback or starts it again
+     * @param paused true to stop the time from moving in play()
+     */
+    public void setPaused(boolean paused){
+        this.paused = paused;
+    }
+
+    /**
+     * Returns true if the playback is paused
+     * @return boolean for whether the playback is paused
+     */
+    public boolean isPaused(){
+        return this.paused;
+    }
+
+    /**
+     * Returns the status of a Sensor at the current time
+     * @param id id of the Sensor
+     * @return Status of the Sensor
+     */
+    public Status getStatus(int id){
+        return STATUSES[status[id]];
+    }
+
+    /**
+     * Returns true if an Agent is on a Sensor at the current time
+     * @param id id of the Sensor
+     * @return boolean for whether an Agent is on the Sensor
+     */
+    public boolean hasAgent(int id){
+        return agents.get(id);
+    }
+
+    /**
+     * Returns the current time of the playback
+     * @return long nanoseconds since the trace started
+     */
+    public long getTime(){
+        return this.time;
+    }
+
+    /**
+     * Returns the time of the last record
+     * @return long nanoseconds from the start to the end of the trace
+     */
+    public long getEndTime(){
+        return this.endTime;
+    }
+
+    /**
+     * Returns the number of messages sent between Sensors up to the current time
+     * @return long messages played back
+     */
+    public long getHopsPlayed(){
+        return this.hopsPlayed;
+    }
+
+    /**
+     * Returns the number of messages sent between Sensors during the whole run
+     * @return long messages in the trace
+     */
+    public long getHops(){
+        return this.hops;
+    }
+
+    /**
+     * Returns the number of records in the trace
+     * @return long number of records
+     */
+    public long getRecords(){
+        return this.records;
+    }
+
+    /**
+     * Returns the number of Sensors of the Graph the trace was recorded on
+     * @return int number of Sensors
+     */
+    public int getSensors(){
+        return this.sensors;
+    }
+
+    private long timeOf(long record){
+        return region(record).getLong(offset(record));
+    }
+
+    /**
+     * Applies a record to the current state and moves past it
+     */
+    private void apply(long record, IntConsumer changed){
+        MappedByteBuffer region = region(record);
+        int offset = offset(record);
+        time = region.getLong(offset);
+        byte kind = region.get(offset + 8);
+        byte detail = region.get(offset + 9);
+        int id = region.getInt(offset + 10);
+        if(kind == Trace.STATUS){
+            //statuses only move forward
+            status[id] = (byte) Math.max(status[id], detail);
+        }
+        else if(kind == Trace.AGENT){
+            agents.set(id, detail != 0);
+        }
+        else{
+            hopsPlayed++;
+        }
+        position = record + 1;
+        if(changed != null && kind != Trace.HOP){
+            changed.accept(id);
+        }
+    }
+
+    /**
+     * Goes back to the state of a key frame, telling the listener about every Sensor that is different in it
+     */
+    private void restore(Keyframe keyframe, IntConsumer changed){
+        if(changed != null){
+            for(int id = 0; id < sensors; id++){
+                if(status[id] != keyframe.status[id] || agents.get(id) != keyframe.agents.get(id)){
+                    changed.accept(id);
+                }
+            }
+        }
+        System.arraycopy(keyframe.status, 0, status, 0, sensors);
+        agents.clear();
+        agents.or(keyframe.agents);
+        position = keyframe.record;
+        time = keyframe.time;
+        hopsPlayed = keyframe.hops;
+    }
+
+    private MappedByteBuffer region(long record){
+        return regions[(int) (record / REGION_RECORDS)];
+    }
+
+    private static int offset(long record){
+        return (int) (record % REGION_RECORDS) * Trace.RECORD_BYTES;
+    }
+
+    /**
+     * State of every Sensor before a given record
+     */
+    private static class Keyframe {
+
+        private final long record;
+        private final long time;
+        private final long hops;
+        private final byte[] status;
+        private final BitSet agents;
+
+        private Keyframe(long record, long time, long hops, byte[] status, BitSet agents){
+            this.record = record;
+            this.time = time;
+            this.hops = hops;
+            this.status = status;
+            this.agents = agents;
+        }
+    }
+}
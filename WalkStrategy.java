@@ -0,0 +1,140 @@
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Picks the next Sensor of the random walk the first Agent does while looking for the fire. The strategies only read
+ * the neighbors of a Sensor, they never copy or change the list.
+ *
+ * UNIFORM picks any neighbor with the same chance. NON_BACKTRACKING does the same but never goes straight back to the
+ * Sensor it came from unless it has nowhere else to go, which is how the walk has always worked. DEGREE_BIASED favours
+ * neighbors with many neighbors of their own, which reach the rest of the graph faster on graphs with hubs.
+ * LEAST_RECENTLY_VISITED goes to the neighbor whose visit is the oldest, Sensors never visited first, so the walk
+ * spreads out instead of going over the same ground. MULTI_WALKER sends WALKERS Agents out at once, each of them
+ * walking like NON_BACKTRACKING, and the search ends when the first of them finds the fire.
+ */
+public enum WalkStrategy {
+
+    UNIFORM {
+        @Override
+        Sensor choose(Sensor current, Sensor previous, Random random){
+            List<Sensor> neighbors = current.getNeighbors();
+            if(neighbors.size() <= 1){
+                return neighbors.isEmpty() ? null : neighbors.get(0);
+            }
+            return neighbors.get(random.nextInt(neighbors.size()));
+        }
+    },
+
+    NON_BACKTRACKING {
+        @Override
+        Sensor choose(Sensor current, Sensor previous, Random random){
+            List<Sensor> neighbors = current.getNeighbors();
+            if(neighbors.size() <= 1){
+                return neighbors.isEmpty() ? null : neighbors.get(0);
+            }
+            int back = previous == null ? -1 : neighbors.indexOf(previous);
+            int choices = back < 0 ? neighbors.size() : neighbors.size() - 1;
+            int pick = choices == 1 ? 0 : random.nextInt(choices);
+            //skip over the Sensor the walk came from
+            if(back >= 0 && pick >= back){
+                pick++;
+            }
+            return neighbors.get(pick);
+        }
+    },
+
+    DEGREE_BIASED {
+        @Override
+        Sensor choose(Sensor current, Sensor previous, Random random){
+            List<Sensor> neighbors = current.getNeighbors();
+            if(neighbors.size() <= 1){
+                return neighbors.isEmpty() ? null : neighbors.get(0);
+            }
+            long total = 0;
+            for(Sensor neighbor: neighbors){
+                if(neighbor != previous){
+                    total += neighbor.getNeighbors().size();
+                }
+            }
+            if(total == 0){
+                return previous;
+            }
+            long pick = (long) (random.nextDouble() * total);
+            for(Sensor neighbor: neighbors){
+                if(neighbor != previous){
+                    pick -= neighbor.getNeighbors().size();
+                    if(pick < 0){
+                        return neighbor;
+                    }
+                }
+            }
+            return previous;
+        }
+    },
+
+    LEAST_RECENTLY_VISITED {
+        @Override
+        Sensor choose(Sensor current, Sensor previous, Random random){
+            List<Sensor> neighbors = current.getNeighbors();
+            Sensor best = null;
+            long oldest = Long.MAX_VALUE;
+            int ties = 0;
+            for(Sensor neighbor: neighbors){
+                long visited = neighbor.getLastVisited();
+                if(visited < oldest){
+                    best = neighbor;
+                    oldest = visited;
+                    ties = 1;
+                }
+                //ties are broken at random, keeping each of them with the same chance
+                else if(visited == oldest && random.nextInt(++ties) == 0){
+                    best = neighbor;
+                }
+            }
+            return best;
+        }
+    },
+
+    MULTI_WALKER {
+        @Override
+        Sensor choose(Sensor current, Sensor previous, Random random){
+            return NON_BACKTRACKING.choose(current, previous, random);
+        }
+
+        @Override
+        public int walkers(){
+            return WALKERS;
+        }
+    };
+
+    /**
+     * Number of Agents MULTI_WALKER sends out
+     */
+    public static final int WALKERS = 4;
+
+    /**
+     * Picks the next Sensor of the walk
+     * @param current Sensor the Agent is on
+     * @param previous Sensor the Agent came from, or null at the start
+     * @param random source of the random choices
+     * @return neighbor to go to, or null if the Sensor has no neighbors
+     */
+    abstract Sensor choose(Sensor current, Sensor previous, Random random);
+
+    /**
+     * Returns the number of Agents walking at the same time
+     * @return int number of walkers, 1 for every strategy but MULTI_WALKER
+     */
+    public int walkers(){
+        return 1;
+    }
+
+    /**
+     * Finds the strategy with the given name, ignoring case and dashes
+     * @param name name of the strategy, such as least-recently-visited
+     * @return the WalkStrategy
+     */
+    public static WalkStrategy parse(String name){
+        return valueOf(name.trim().toUpperCase().replace('-', '_'));
+    }
+}
@@ -0,0 +1,74 @@
+/**
+ * Checks that recycled Agents do not keep waking up once their walk is over. With MULTI_WALKER a walker that
+ * retires because another one found the fire can leave its walk timer pending, and the AgentPool can hand the same
+ * Agent object out again as a copy before the timer goes off. The timer of the earlier life used to wake the copy
+ * over and over at the same virtual time, so the run never ended.
+ *
+ * A small graph where that happens is run on the discrete event Scheduler for many seeds, and a run fails if more
+ * than MAX_EVENTS_AT_ONCE events run without the clock moving.
+ *
+ * Usage: java WalkerCheck [seeds]
+ * The exit code is 1 if any run got stuck.
+ */
+public class WalkerCheck {
+
+    //far more events than a handful of Sensors and Agents can have at one time
+    private static final int MAX_EVENTS_AT_ONCE = 10000;
+    private static final long TIME_LIMIT_MILLIS = 24L * 60 * 60 * 1000;
+
+    //the graph the livelock was found on: nodes 0 to 7 on a line, the station on 7 and the fire on 0
+    private static final int[][] EDGES = {
+            {0, 1}, {1, 2}, {1, 3}, {0, 5}, {2, 3}, {1, 6}, {1, 7}, {2, 6}, {4, 5}, {4, 6}, {3, 7}, {4, 7}, {5, 7}
+    };
+
+    public static void main(String[] args){
+        int seeds = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int stuck = 0;
+        for(long seed = 1; seed <= seeds; seed++){
+            if(!run(seed)){
+                System.out.println("seed " + seed + " got stuck");
+                stuck++;
+            }
+        }
+        System.out.println(seeds + " runs, " + stuck + " stuck");
+        System.exit(stuck == 0 ? 0 : 1);
+    }
+
+    /**
+     * Runs the fire on the graph until the Base Station burns
+     * @param seed seed of the run
+     * @return false if the clock stopped moving
+     */
+    private static boolean run(long seed){
+        Graph graph = new Graph();
+        for(int x = 0; x < 8; x++){
+            graph.addSensor(x == 7 ? new BaseStation(x, 0) : new Sensor(x, 0));
+        }
+        for(int[] edge: EDGES){
+            graph.addEdge(graph.findSensor(edge[0], 0), graph.findSensor(edge[1], 0));
+        }
+        graph.freeze();
+
+        Scheduler scheduler = new Scheduler(Scheduler.Mode.DISCRETE_EVENT, seed);
+        scheduler.setWalkStrategy(WalkStrategy.MULTI_WALKER);
+        Sensor station = graph.getBaseStation();
+        Agent agent = new Agent("1", station, false);
+        station.agentMove(agent);
+        graph.startThreadsForAllSensors(scheduler);
+        scheduler.start(agent);
+        graph.findSensor(0, 0).getQ().offer(Message.FIRE);
+
+        long[] clock = {-1, 0};
+        boolean[] stalled = {false};
+        scheduler.runUntil(() -> {
+            if(scheduler.now() != clock[0]){
+                clock[0] = scheduler.now();
+                clock[1] = scheduler.getEventsRun();
+            }
+            stalled[0] = scheduler.getEventsRun() - clock[1] > MAX_EVENTS_AT_ONCE;
+            return station.isDead() || stalled[0];
+        }, TIME_LIMIT_MILLIS);
+        ((BaseStation) station).getEventLog().close();
+        return !stalled[0];
+    }
+}
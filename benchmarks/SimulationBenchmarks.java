@@ -0,0 +1,129 @@
+package benchmarks;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * JMH benchmarks for the hot paths of the simulation: loading a configuration file, walking the neighbors of every
+ * Sensor, relaying messages to the Base Station, and Agents copying themselves over an alerted graph. Every benchmark
+ * runs on a synthetic graph for each combination of the family, size and degree parameters.
+ *
+ * The simulation classes are in the default package, so the work is done by the public BenchmarkShim, created by
+ * reflection and called through method handles bound to it. Each benchmark returns the number its work produced, which
+ * JMH consumes.
+ *
+ * Usage: mvn -B package, then java -jar target/benchmarks.jar, for example
+ *        java -jar target/benchmarks.jar relay -p size=2000 -p degree=4,16
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 10, time = 1)
+@Fork(2)
+public class SimulationBenchmarks {
+
+    /**
+     * The synthetic graph of a trial and the handles to the workloads of its shim
+     */
+    @State(Scope.Benchmark)
+    public static class Topology {
+
+        //ring lattices unless another TopologyGenerator.Family is given with -p family=...
+        @Param({"ring"})
+        public String family;
+
+        @Param({"500", "2000"})
+        public int size;
+
+        @Param({"4", "16"})
+        public int degree;
+
+        private Object shim;
+        private MethodHandle load;
+        private MethodHandle iterateNeighbors;
+        private MethodHandle prepareRelay;
+        private MethodHandle relay;
+        private MethodHandle prepareCloning;
+        private MethodHandle cloning;
+
+        @Setup(Level.Trial)
+        public void setup() throws Throwable {
+            Class<?> type = Class.forName("BenchmarkShim");
+            shim = type.getConstructor(String.class, int.class, int.class).newInstance(family, size, degree);
+            load = handle(type, "load", long.class);
+            iterateNeighbors = handle(type, "iterateNeighbors", long.class);
+            prepareRelay = handle(type, "prepareRelay", void.class);
+            relay = handle(type, "relay", long.class);
+            prepareCloning = handle(type, "prepareCloning", void.class);
+            cloning = handle(type, "cloning", long.class);
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws Throwable {
+            handle(shim.getClass(), "close", void.class).invoke();
+        }
+
+        private MethodHandle handle(Class<?> type, String name, Class<?> result) throws ReflectiveOperationException {
+            return MethodHandles.publicLookup().findVirtual(type, name, MethodType.methodType(result)).bindTo(shim);
+        }
+    }
+
+    /**
+     * A fresh copy of the graph with messages waiting to be relayed, made before every call
+     */
+    @State(Scope.Thread)
+    public static class RelayRun {
+
+        @Setup(Level.Invocation)
+        public void setup(Topology topology) throws Throwable {
+            topology.prepareRelay.invoke();
+        }
+    }
+
+    /**
+     * A fresh copy of the graph, alerted everywhere with the first Agent on it, made before every call
+     */
+    @State(Scope.Thread)
+    public static class CloningRun {
+
+        @Setup(Level.Invocation)
+        public void setup(Topology topology) throws Throwable {
+            topology.prepareCloning.invoke();
+        }
+    }
+
+    @Benchmark
+    public long load(Topology topology) throws Throwable {
+        return (long) topology.load.invoke();
+    }
+
+    @Benchmark
+    public long neighbors(Topology topology) throws Throwable {
+        return (long) topology.iterateNeighbors.invoke();
+    }
+
+    @Benchmark
+    public long relay(Topology topology, RelayRun run) throws Throwable {
+        return (long) topology.relay.invoke();
+    }
+
+    @Benchmark
+    public long cloning(Topology topology, CloningRun run) throws Throwable {
+        return (long) topology.cloning.invoke();
+    }
+}